@@ -0,0 +1,54 @@
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.3"
+}
+
+repositories {
+    mavenCentral()
+    maven {
+        name = "papermc"
+        url = uri("https://repo.papermc.io/repository/maven-public/")
+    }
+}
+
+dependencies {
+    jmhImplementation(project(":patchbukkit"))
+    // compileOnly in :patchbukkit, where the server provides it
+    jmhImplementation("io.papermc.paper:paper-api:1.21.11-R0.1-SNAPSHOT")
+}
+
+// Echoing stand-in for the native library, so the generated stubs can be measured without Pumpkin
+val bridgeStubDir = rootProject.projectDir.resolve("../rust/bridge-stub")
+val bridgeStubLibrary = bridgeStubDir.resolve("target/release/" + System.mapLibraryName("patchbukkit_bridge_stub"))
+
+val buildBridgeStub by tasks.registering(Exec::class) {
+    workingDir = bridgeStubDir
+    commandLine("cargo", "build", "--release")
+}
+
+tasks.named("jmh") {
+    dependsOn(buildBridgeStub)
+}
+
+// Replays a capture written with PATCHBUKKIT_CAPTURE_EVENTS against plugin jars, e.g.
+// ./gradlew :bridge-bench:replayEvents --args="events.bin plugins/Foo.jar plugins/Bar.jar"
+val replayEvents by tasks.registering(JavaExec::class) {
+    dependsOn(buildBridgeStub)
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass = "org.patchbukkit.bench.EventReplay"
+    jvmArgs("--enable-native-access=ALL-UNNAMED", "-Dpatchbukkit.bridgeStub=${bridgeStubLibrary.absolutePath}")
+}
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(25)
+    }
+}
+
+jmh {
+    jmhVersion = "1.37"
+    jvmArgs.add("--enable-native-access=ALL-UNNAMED")
+    jvmArgs.add("-Dpatchbukkit.bridgeStub=${bridgeStubLibrary.absolutePath}")
+    // Bytes allocated per operation, next to the timings
+    profilers.add("gc")
+}
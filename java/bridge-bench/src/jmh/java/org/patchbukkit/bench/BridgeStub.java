@@ -0,0 +1,107 @@
+package org.patchbukkit.bench;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Path;
+import patchbukkit.bridge.NativeBridgeFfi;
+
+/**
+ * Loads rust/bridge-stub and hands its entry points to {@link NativeBridgeFfi}, which is what
+ * {@code initialize_ffi_callbacks} does for the real library through j4rs.
+ *
+ * <p>The library path comes from the {@code patchbukkit.bridgeStub} system property, which
+ * {@code ./gradlew :bridge-bench:jmh} sets after building the stub.
+ */
+final class BridgeStub {
+
+    private static final String LIBRARY_PROPERTY = "patchbukkit.bridgeStub";
+
+    private static SymbolLookup library;
+    private static MethodHandle setRegistrySize;
+
+    private BridgeStub() {
+    }
+
+    static synchronized void load() {
+        if (library != null) {
+            return;
+        }
+
+        String path = System.getProperty(LIBRARY_PROPERTY);
+        if (path == null) {
+            throw new IllegalStateException("-D" + LIBRARY_PROPERTY + " must point to the bridge stub library");
+        }
+        library = SymbolLookup.libraryLookup(Path.of(path), Arena.global());
+
+        NativeBridgeFfi.init(
+            address("ffi_native_bridge_get_abilities"),
+            address("ffi_native_bridge_set_abilities"),
+            address("ffi_native_bridge_register_event"),
+            address("ffi_native_bridge_call_event"),
+            address("ffi_native_bridge_send_message"),
+            address("ffi_native_bridge_get_location"),
+            address("ffi_native_bridge_get_registry_data"),
+            address("ffi_native_bridge_player_entity_play_sound"),
+            address("ffi_native_bridge_player_play_sound"),
+            address("ffi_native_bridge_get_jvm_metrics"),
+            address("ffi_native_bridge_batch_get_abilities"),
+            address("ffi_native_bridge_batch_set_abilities"),
+            address("ffi_native_bridge_batch_register_event"),
+            address("ffi_native_bridge_batch_call_event"),
+            address("ffi_native_bridge_batch_send_message"),
+            address("ffi_native_bridge_batch_get_location"),
+            address("ffi_native_bridge_batch_get_registry_data"),
+            address("ffi_native_bridge_batch_player_entity_play_sound"),
+            address("ffi_native_bridge_batch_player_play_sound"),
+            address("ffi_native_bridge_batch_get_jvm_metrics"));
+        NativeBridgeFfi.initFree(address("ffi_free_bytes"));
+
+        Linker linker = Linker.nativeLinker();
+        MethodHandle startSubmissionRing = linker.downcallHandle(
+            library.find("bridge_stub_start_submission_ring").orElseThrow(),
+            FunctionDescriptor.of(ValueLayout.JAVA_BOOLEAN, ValueLayout.ADDRESS));
+        setRegistrySize = linker.downcallHandle(
+            library.find("bridge_stub_set_registry_size").orElseThrow(),
+            FunctionDescriptor.ofVoid(ValueLayout.JAVA_INT));
+
+        MemorySegment ring = Arena.global().allocate(ValueLayout.JAVA_LONG, 3);
+        boolean started;
+        try {
+            started = (boolean) startSubmissionRing.invokeExact(ring);
+        } catch (Throwable t) {
+            throw new IllegalStateException("FFI call failed", t);
+        }
+        if (!started) {
+            throw new IllegalStateException("The bridge stub failed to start its submission ring");
+        }
+        NativeBridgeFfi.initSubmissionRing(
+            ring.getAtIndex(ValueLayout.JAVA_LONG, 0),
+            ring.getAtIndex(ValueLayout.JAVA_LONG, 1),
+            ring.getAtIndex(ValueLayout.JAVA_LONG, 2),
+            address("ffi_submission_ring_doorbell"));
+    }
+
+    /** Sets how many sound events the stub answers GetRegistryData with. */
+    static void setRegistrySize(int soundEvents) {
+        try {
+            setRegistrySize.invokeExact(soundEvents);
+        } catch (Throwable t) {
+            throw new IllegalStateException("FFI call failed", t);
+        }
+    }
+
+    /** An entry point of the stub, for benchmarks that link it themselves. */
+    static MemorySegment symbol(String symbol) {
+        return library.find(symbol)
+            .orElseThrow(() -> new IllegalStateException("Bridge stub does not export " + symbol));
+    }
+
+    private static long address(String symbol) {
+        return symbol(symbol).address();
+    }
+}
@@ -0,0 +1,89 @@
+package org.patchbukkit.bench;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import patchbukkit.bridge.NativeBridgeFfi;
+import patchbukkit.common.UUID;
+
+/**
+ * Per-call cost of the {@code (patchbukkit.ffi.critical)} linkage, on the GetLocation entry
+ * point of rust/bridge-stub.
+ *
+ * <p>{@code regular} and {@code critical} link the same generated Rust function, once as a
+ * regular and once as a critical downcall, and pass it the UUID struct and Location output
+ * struct the generated stub does, so their difference is the saved thread state transition.
+ * {@code stub} goes through {@link NativeBridgeFfi#getLocation} as plugins do, a regular
+ * downcall that adds writing the request and decoding the response.
+ *
+ * <p>GetLocation itself is not critical, since Pumpkin's entity lookup takes locks. The stub
+ * answers it without any, so this measures what the option saves on a method that qualifies.
+ *
+ * <p>Run with {@code ./gradlew :bridge-bench:jmh}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CriticalDowncallBenchmark {
+
+    /** The descriptor protoc-gen-ffi gives methods with fixed-layout requests and responses */
+    private static final FunctionDescriptor DESCRIPTOR = FunctionDescriptor.of(
+        ValueLayout.JAVA_BOOLEAN, ValueLayout.ADDRESS, ValueLayout.ADDRESS);
+
+    /** As large as the struct buffers of the generated stubs */
+    private static final long STRUCT_CAPACITY = 48;
+
+    private MethodHandle regular;
+    private MethodHandle critical;
+    private UUID player;
+    private MemorySegment input;
+    private MemorySegment output;
+
+    @Setup
+    public void setup() {
+        BridgeStub.load();
+
+        Linker linker = Linker.nativeLinker();
+        MemorySegment getLocation = BridgeStub.symbol("ffi_native_bridge_get_location");
+        this.regular = linker.downcallHandle(getLocation, DESCRIPTOR);
+        this.critical = linker.downcallHandle(getLocation, DESCRIPTOR, Linker.Option.critical(true));
+
+        this.player = UUID.newBuilder().setMostSignificantBits(1).setLeastSignificantBits(2).build();
+        this.input = Arena.ofAuto().allocate(STRUCT_CAPACITY, Long.BYTES);
+        this.input.set(ValueLayout.JAVA_LONG, 0, this.player.getMostSignificantBits());
+        this.input.set(ValueLayout.JAVA_LONG, Long.BYTES, this.player.getLeastSignificantBits());
+        this.output = Arena.ofAuto().allocate(STRUCT_CAPACITY, Long.BYTES);
+    }
+
+    @Benchmark
+    public boolean regular() throws Throwable {
+        return (boolean) this.regular.invokeExact(this.input, this.output);
+    }
+
+    @Benchmark
+    public boolean critical() throws Throwable {
+        return (boolean) this.critical.invokeExact(this.input, this.output);
+    }
+
+    @Benchmark
+    public Object stub() {
+        return NativeBridgeFfi.getLocation(this.player);
+    }
+}
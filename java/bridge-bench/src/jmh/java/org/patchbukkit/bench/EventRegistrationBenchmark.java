@@ -0,0 +1,105 @@
+package org.patchbukkit.bench;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.bukkit.Server;
+import org.bukkit.Warning;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.patchbukkit.events.PatchBukkitEventManager;
+
+/**
+ * Listener registration throughput of {@link PatchBukkitEventManager}, the path plugins take
+ * when they register listeners on the fly, for example per minigame arena.
+ *
+ * <p>Every operation registers a listener and unregisters it again, so the HandlerList keeps
+ * its size. Only the first registration of a priority band reaches rust/bridge-stub.
+ *
+ * <p>Run with {@code ./gradlew :bridge-bench:jmh}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventRegistrationBenchmark {
+
+    private static final EventExecutor EXECUTOR = (listener, event) -> { };
+
+    private PatchBukkitEventManager eventManager;
+    private Plugin plugin;
+    private Listener listener;
+    private Listener annotatedListener;
+
+    /** A listener with a single handler, like most plugin listeners. */
+    public static class JoinListener implements Listener {
+        @EventHandler
+        public void onJoin(PlayerJoinEvent event) {
+        }
+    }
+
+    @Setup
+    public void setup() {
+        BridgeStub.load();
+
+        this.eventManager = new PatchBukkitEventManager(stub(Server.class));
+        this.plugin = stub(Plugin.class);
+        this.listener = new Listener() { };
+        this.annotatedListener = new JoinListener();
+    }
+
+    /** {@code PluginManager.registerEvent} with an explicit executor. */
+    @Benchmark
+    public void registerEvent() {
+        this.eventManager.registerEvent(PlayerJoinEvent.class, this.listener, EventPriority.NORMAL, EXECUTOR, this.plugin);
+        HandlerList.unregisterAll(this.listener);
+    }
+
+    /** {@code PluginManager.registerEvents}, which also scans the listener's methods. */
+    @Benchmark
+    public void registerEvents() {
+        this.eventManager.registerEvents(this.annotatedListener, this.plugin);
+        HandlerList.unregisterAll(this.annotatedListener);
+    }
+
+    /**
+     * Just enough of a Server or Plugin for registration: an enabled plugin, a logger and the
+     * default warning state. Everything else answers null, false or zero.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) ->
+            switch (method.getName()) {
+                case "isEnabled" -> true;
+                case "getName", "toString" -> "EventRegistrationBenchmark";
+                case "getLogger" -> Logger.getLogger("EventRegistrationBenchmark");
+                case "getWarningState" -> Warning.WarningState.DEFAULT;
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> {
+                    Class<?> returnType = method.getReturnType();
+                    if (returnType == boolean.class) yield false;
+                    if (returnType == int.class) yield 0;
+                    if (returnType == long.class) yield 0L;
+                    yield null;
+                }
+            });
+    }
+}
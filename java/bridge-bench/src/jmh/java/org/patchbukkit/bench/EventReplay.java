@@ -0,0 +1,206 @@
+package org.patchbukkit.bench;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import org.bukkit.Bukkit;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.RegisteredListener;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.patchbukkit.PatchBukkitServer;
+import org.patchbukkit.bridge.BridgeUtils;
+import org.patchbukkit.entity.PatchBukkitPlayer;
+import org.patchbukkit.events.PatchBukkitEventFactory;
+import org.patchbukkit.events.PatchBukkitEventManager;
+import org.patchbukkit.events.PluginLanes;
+import org.patchbukkit.loader.PatchBukkitPluginLoader;
+import patchbukkit.events.CapturedEvent;
+import patchbukkit.events.FireEventRequest;
+
+/**
+ * Replays a capture written by Rust with {@code PATCHBUKKIT_CAPTURE_EVENTS} against real
+ * plugin jars, with rust/bridge-stub standing in for Pumpkin. Every captured event goes
+ * through {@link PatchBukkitEventManager#fireEvent(FireEventRequest)} like it did live, as
+ * fast as possible, which gives the dispatch throughput. A second pass times every listener
+ * on its own for the latency per plugin.
+ *
+ * <p>Rust fires every band of an event once per JVM lane with listeners in it, so the plugins
+ * are pinned to the lanes the capture recorded for them and every request only runs the
+ * listeners of its lane, once each as live. Plugins the capture has no lane for are on lane 0.
+ *
+ * <p>Players that joined during the capture are registered up front. Plugins are loaded from
+ * their plugin.yml, without dependency ordering, so list dependencies first.
+ *
+ * <p>Run with {@code ./gradlew :bridge-bench:replayEvents --args="<capture> <plugin.jar>..."}.
+ */
+public final class EventReplay {
+
+    private static final int WARMUP_PASSES = 3;
+
+    private EventReplay() {
+    }
+
+    public static void main(String[] args) throws IOException, InvalidDescriptionException {
+        if (args.length < 2) {
+            System.err.println("Usage: EventReplay <capture> <plugin.jar>...");
+            System.exit(2);
+        }
+
+        List<CapturedEvent> events = readCapture(Path.of(args[0]));
+        if (events.isEmpty()) {
+            System.err.println("The capture holds no events");
+            System.exit(1);
+        }
+
+        BridgeStub.load();
+        PatchBukkitServer server = new PatchBukkitServer();
+        Bukkit.setServer(server);
+
+        List<Plugin> plugins = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            plugins.add(loadPlugin(server, Path.of(args[i])));
+        }
+        for (Plugin plugin : plugins) {
+            server.getPluginManager().enablePlugin(plugin);
+        }
+        registerPlayers(server, events);
+
+        PatchBukkitEventManager eventManager = server.getEventManager();
+        long captured = events.getLast().getTimestampNanos() - events.getFirst().getTimestampNanos();
+        System.out.printf("Captured %d band and lane requests over %.3f s%n", events.size(), captured / 1e9);
+
+        for (int pass = 0; pass < WARMUP_PASSES; pass++) {
+            replay(eventManager, events);
+        }
+        long replayed = replay(eventManager, events);
+        System.out.printf("Replayed in %.3f s, %.0f requests/s, %.0f ns/request%n",
+            replayed / 1e9, events.size() / (replayed / 1e9), (double) replayed / events.size());
+
+        printPluginLatency(events);
+
+        for (Plugin plugin : plugins) {
+            server.getPluginManager().disablePlugin(plugin);
+        }
+    }
+
+    /** The captured requests, pinning plugins to their lanes along the way. */
+    private static List<CapturedEvent> readCapture(Path path) throws IOException {
+        List<CapturedEvent> events = new ArrayList<>();
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+            CapturedEvent event;
+            while ((event = readEvent(input, events.size())) != null) {
+                if (event.hasLaneAssignment()) {
+                    PluginLanes.assign(event.getLaneAssignment().getPlugin(), event.getLaneAssignment().getLane());
+                } else if (event.hasRequest()) {
+                    events.add(event);
+                }
+            }
+        }
+        return events;
+    }
+
+    /** Null at the end of the capture, including a last event cut short by a crash. */
+    private static CapturedEvent readEvent(InputStream input, int read) throws IOException {
+        try {
+            return CapturedEvent.parseDelimitedFrom(input);
+        } catch (InvalidProtocolBufferException e) {
+            System.err.println("The capture ends in an incomplete event, replaying the " + read + " before it");
+            return null;
+        }
+    }
+
+    private static Plugin loadPlugin(PatchBukkitServer server, Path jarPath) throws IOException, InvalidDescriptionException {
+        PluginDescriptionFile description;
+        try (JarFile jar = new JarFile(jarPath.toFile())) {
+            JarEntry entry = jar.getJarEntry("plugin.yml");
+            if (entry == null) {
+                throw new IllegalArgumentException(jarPath + " has no plugin.yml");
+            }
+            description = new PluginDescriptionFile(jar.getInputStream(entry));
+        }
+
+        JavaPlugin plugin = PatchBukkitPluginLoader.createPlugin(
+            jarPath.toString(), description.getMain(), "", String.join("\n", description.getLibraries()));
+        if (plugin == null) {
+            throw new IllegalArgumentException("Could not load " + jarPath);
+        }
+        server.registerPlugin(plugin);
+        return plugin;
+    }
+
+    private static void registerPlayers(PatchBukkitServer server, List<CapturedEvent> events) {
+        for (CapturedEvent captured : events) {
+            patchbukkit.events.Event event = captured.getRequest().getEvent();
+            if (!event.hasPlayerJoin()) continue;
+
+            UUID uuid = BridgeUtils.convertUuid(event.getPlayerJoin().getPlayerUuid());
+            if (server.getPlayer(uuid) == null) {
+                server.registerPlayer(new PatchBukkitPlayer(uuid, "Replay-" + uuid.toString().substring(0, 8)));
+            }
+        }
+    }
+
+    /** Returns how long the pass took, in nanoseconds. */
+    private static long replay(PatchBukkitEventManager eventManager, List<CapturedEvent> events) {
+        long start = System.nanoTime();
+        for (CapturedEvent captured : events) {
+            eventManager.fireEvent(captured.getRequest());
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Calls the listeners of every captured event one by one, in the band and lane the event
+     * was fired for, and prints the time spent per plugin.
+     */
+    private static void printPluginLatency(List<CapturedEvent> events) {
+        // Per plugin: calls, total and slowest call in nanoseconds
+        Map<String, long[]> latencies = new LinkedHashMap<>();
+
+        for (CapturedEvent captured : events) {
+            FireEventRequest request = captured.getRequest();
+            Event event = PatchBukkitEventFactory.createEvent(request.getEvent());
+            if (event == null) continue;
+            if (request.getCancelled() && event instanceof Cancellable cancellable) {
+                cancellable.setCancelled(true);
+            }
+
+            for (RegisteredListener listener : event.getHandlers().getRegisteredListeners()) {
+                if (listener.getPriority().ordinal() != request.getPriority()) continue;
+                if (PluginLanes.of(listener.getPlugin()) != request.getLane()) continue;
+                if (!listener.getPlugin().isEnabled()) continue;
+
+                long start = System.nanoTime();
+                try {
+                    listener.callEvent(event);
+                } catch (Throwable ignored) {
+                    // Already reported by the replay passes
+                }
+                long elapsed = System.nanoTime() - start;
+
+                long[] latency = latencies.computeIfAbsent(listener.getPlugin().getName(), ignored -> new long[3]);
+                latency[0]++;
+                latency[1] += elapsed;
+                latency[2] = Math.max(latency[2], elapsed);
+            }
+        }
+
+        System.out.printf("%-32s %10s %12s %12s%n", "Plugin", "Calls", "Mean ns", "Max ns");
+        latencies.forEach((plugin, latency) -> System.out.printf("%-32s %10d %12d %12d%n",
+            plugin, latency[0], latency[1] / latency[0], latency[2]));
+    }
+}
@@ -0,0 +1,157 @@
+package org.patchbukkit.bench;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import patchbukkit.abilities.Abilities;
+import patchbukkit.abilities.SetAbilitiesRequest;
+import patchbukkit.bridge.NativeBridgeFfi;
+import patchbukkit.common.Location;
+import patchbukkit.common.UUID;
+import patchbukkit.common.Vec3;
+import patchbukkit.common.World;
+import patchbukkit.events.CallEventRequest;
+import patchbukkit.events.Event;
+import patchbukkit.events.PlayerJoinEvent;
+import patchbukkit.events.RegisterEventRequest;
+import patchbukkit.message.SendMessageRequest;
+import patchbukkit.registry.GetRegistryDataRequest;
+import patchbukkit.registry.RegistryType;
+import patchbukkit.sound.PlayerEntityPlaySoundRequest;
+import patchbukkit.sound.PlayerPlaySoundRequest;
+import patchbukkit.sound.Sound;
+
+/**
+ * The Batch variant of every NativeBridge stub, called against rust/bridge-stub with
+ * {@code batchSize} identical requests. Divide by {@code batchSize} to compare with the
+ * per-call numbers of {@link NativeBridgeBenchmark} and {@link NativeBridgePayloadBenchmark}.
+ *
+ * <p>Run with {@code ./gradlew :bridge-bench:jmh}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NativeBridgeBatchBenchmark {
+
+    @Param({"1", "16", "256"})
+    private int batchSize;
+
+    private List<UUID> players;
+    private List<SetAbilitiesRequest> setAbilities;
+    private List<RegisterEventRequest> registerEvent;
+    private List<CallEventRequest> callEvent;
+    private List<SendMessageRequest> sendMessage;
+    private List<GetRegistryDataRequest> getRegistryData;
+    private List<PlayerEntityPlaySoundRequest> playerEntityPlaySound;
+    private List<PlayerPlaySoundRequest> playerPlaySound;
+
+    @Setup
+    public void setup() {
+        BridgeStub.load();
+        BridgeStub.setRegistrySize(1);
+
+        UUID player = UUID.newBuilder().setMostSignificantBits(1).setLeastSignificantBits(2).build();
+        Sound sound = Sound.newBuilder().setName("minecraft:entity.experience_orb.pickup").setCategory("player").build();
+
+        this.players = this.repeat(player);
+        this.setAbilities = this.repeat(SetAbilitiesRequest.newBuilder()
+            .setUuid(player)
+            .setAbilities(Abilities.newBuilder().setFlying(true).setFlySpeed(0.05f).setWalkSpeed(0.1f))
+            .build());
+        this.registerEvent = this.repeat(RegisterEventRequest.newBuilder()
+            .setEventType("org.bukkit.event.player.PlayerJoinEvent")
+            .setPluginName("bench")
+            .setBlocking(true)
+            .build());
+        this.callEvent = this.repeat(CallEventRequest.newBuilder()
+            .setEvent(Event.newBuilder()
+                .setPlayerJoin(PlayerJoinEvent.newBuilder().setPlayerUuid(player).setJoinMessage("Player joined the game")))
+            .build());
+        this.sendMessage = this.repeat(SendMessageRequest.newBuilder()
+            .setUuid(player)
+            .setMessage("Hello from the bridge benchmark")
+            .build());
+        this.getRegistryData = this.repeat(GetRegistryDataRequest.newBuilder()
+            .setRegistry(RegistryType.SOUND_EVENT)
+            .build());
+        this.playerEntityPlaySound = this.repeat(PlayerEntityPlaySoundRequest.newBuilder()
+            .setPlayerUuid(player)
+            .setEntityUuid(player)
+            .setSound(sound)
+            .setVolume(1)
+            .setPitch(1)
+            .build());
+        this.playerPlaySound = this.repeat(PlayerPlaySoundRequest.newBuilder()
+            .setPlayerUuid(player)
+            .setLocation(Location.newBuilder()
+                .setWorld(World.newBuilder().setUuid(player))
+                .setPosition(Vec3.newBuilder().setX(8).setY(64).setZ(8)))
+            .setSound(sound)
+            .setVolume(1)
+            .setPitch(1)
+            .build());
+    }
+
+    private <T> List<T> repeat(T request) {
+        return Collections.nCopies(this.batchSize, request);
+    }
+
+    @Benchmark
+    public Object batchGetAbilities() {
+        return NativeBridgeFfi.batchGetAbilities(this.players);
+    }
+
+    @Benchmark
+    public Object batchSetAbilities() {
+        return NativeBridgeFfi.batchSetAbilities(this.setAbilities);
+    }
+
+    @Benchmark
+    public Object batchRegisterEvent() {
+        return NativeBridgeFfi.batchRegisterEvent(this.registerEvent);
+    }
+
+    @Benchmark
+    public Object batchCallEvent() {
+        return NativeBridgeFfi.batchCallEvent(this.callEvent);
+    }
+
+    @Benchmark
+    public Object batchSendMessage() {
+        return NativeBridgeFfi.batchSendMessage(this.sendMessage);
+    }
+
+    @Benchmark
+    public Object batchGetLocation() {
+        return NativeBridgeFfi.batchGetLocation(this.players);
+    }
+
+    @Benchmark
+    public Object batchGetRegistryData() {
+        return NativeBridgeFfi.batchGetRegistryData(this.getRegistryData);
+    }
+
+    @Benchmark
+    public Object batchPlayerEntityPlaySound() {
+        return NativeBridgeFfi.batchPlayerEntityPlaySound(this.playerEntityPlaySound);
+    }
+
+    @Benchmark
+    public Object batchPlayerPlaySound() {
+        return NativeBridgeFfi.batchPlayerPlaySound(this.playerPlaySound);
+    }
+}
@@ -0,0 +1,108 @@
+package org.patchbukkit.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import patchbukkit.abilities.Abilities;
+import patchbukkit.abilities.SetAbilitiesRequest;
+import patchbukkit.bridge.NativeBridgeFfi;
+import patchbukkit.common.Location;
+import patchbukkit.common.UUID;
+import patchbukkit.common.Vec3;
+import patchbukkit.common.World;
+import patchbukkit.sound.PlayerEntityPlaySoundRequest;
+import patchbukkit.sound.PlayerPlaySoundRequest;
+import patchbukkit.sound.Sound;
+
+/**
+ * NativeBridge stubs with fixed-size requests and responses, called against rust/bridge-stub.
+ * Together with {@link NativeBridgePayloadBenchmark} and {@link NativeBridgeBatchBenchmark}
+ * this covers every generated stub.
+ *
+ * <p>Run with {@code ./gradlew :bridge-bench:jmh}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NativeBridgeBenchmark {
+
+    private UUID player;
+    private SetAbilitiesRequest setAbilities;
+    private PlayerEntityPlaySoundRequest playerEntityPlaySound;
+    private PlayerPlaySoundRequest playerPlaySound;
+
+    @Setup
+    public void setup() {
+        BridgeStub.load();
+
+        this.player = UUID.newBuilder().setMostSignificantBits(1).setLeastSignificantBits(2).build();
+        this.setAbilities = SetAbilitiesRequest.newBuilder()
+            .setUuid(this.player)
+            .setAbilities(Abilities.newBuilder().setFlying(true).setFlySpeed(0.05f).setWalkSpeed(0.1f))
+            .build();
+
+        Sound sound = Sound.newBuilder().setName("minecraft:entity.experience_orb.pickup").setCategory("player").build();
+        this.playerEntityPlaySound = PlayerEntityPlaySoundRequest.newBuilder()
+            .setPlayerUuid(this.player)
+            .setEntityUuid(this.player)
+            .setSound(sound)
+            .setVolume(1)
+            .setPitch(1)
+            .build();
+        this.playerPlaySound = PlayerPlaySoundRequest.newBuilder()
+            .setPlayerUuid(this.player)
+            .setLocation(Location.newBuilder()
+                .setWorld(World.newBuilder().setUuid(this.player))
+                .setPosition(Vec3.newBuilder().setX(8).setY(64).setZ(8)))
+            .setSound(sound)
+            .setVolume(1)
+            .setPitch(1)
+            .build();
+    }
+
+    @Benchmark
+    public Object getAbilities() {
+        return NativeBridgeFfi.getAbilities(this.player);
+    }
+
+    @Benchmark
+    public Object setAbilities() {
+        return NativeBridgeFfi.setAbilities(this.setAbilities);
+    }
+
+    @Benchmark
+    public Object getLocation() {
+        return NativeBridgeFfi.getLocation(this.player);
+    }
+
+    @Benchmark
+    public Object playerEntityPlaySound() {
+        return NativeBridgeFfi.playerEntityPlaySound(this.playerEntityPlaySound);
+    }
+
+    @Benchmark
+    public void playerEntityPlaySoundAsync() {
+        NativeBridgeFfi.playerEntityPlaySoundAsync(this.playerEntityPlaySound);
+    }
+
+    @Benchmark
+    public Object playerPlaySound() {
+        return NativeBridgeFfi.playerPlaySound(this.playerPlaySound);
+    }
+
+    @Benchmark
+    public void playerPlaySoundAsync() {
+        NativeBridgeFfi.playerPlaySoundAsync(this.playerPlaySound);
+    }
+}
@@ -0,0 +1,102 @@
+package org.patchbukkit.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import patchbukkit.bridge.NativeBridgeFfi;
+import patchbukkit.common.UUID;
+import patchbukkit.events.CallEventRequest;
+import patchbukkit.events.Event;
+import patchbukkit.events.PlayerJoinEvent;
+import patchbukkit.events.RegisterEventRequest;
+import patchbukkit.message.SendMessageRequest;
+import patchbukkit.registry.GetRegistryDataRequest;
+import patchbukkit.registry.RegistryType;
+
+/**
+ * NativeBridge stubs whose requests or responses carry a variable amount of data, called
+ * against rust/bridge-stub with roughly {@code payloadSize} bytes of strings per call.
+ * GetRegistryData is sized by its response instead, the stub answers with about
+ * {@code payloadSize} bytes of sound events.
+ *
+ * <p>Run with {@code ./gradlew :bridge-bench:jmh}; the gc profiler reports the bytes
+ * allocated per operation next to the timings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NativeBridgePayloadBenchmark {
+
+    /** Encoded size of one sound event answered by the stub. */
+    private static final int SOUND_EVENT_SIZE = 36;
+
+    @Param({"16", "256", "4096", "65536"})
+    private int payloadSize;
+
+    private SendMessageRequest sendMessage;
+    private CallEventRequest callEvent;
+    private RegisterEventRequest registerEvent;
+    private GetRegistryDataRequest getRegistryData;
+
+    @Setup
+    public void setup() {
+        BridgeStub.load();
+        BridgeStub.setRegistrySize(Math.max(1, this.payloadSize / SOUND_EVENT_SIZE));
+
+        String text = "x".repeat(this.payloadSize);
+        UUID player = UUID.newBuilder().setMostSignificantBits(1).setLeastSignificantBits(2).build();
+        this.sendMessage = SendMessageRequest.newBuilder().setUuid(player).setMessage(text).build();
+        this.callEvent = CallEventRequest.newBuilder()
+            .setEvent(Event.newBuilder()
+                .setPlayerJoin(PlayerJoinEvent.newBuilder().setPlayerUuid(player).setJoinMessage(text)))
+            .build();
+        this.registerEvent = RegisterEventRequest.newBuilder()
+            .setEventType(text)
+            .setPluginName("bench")
+            .setBlocking(true)
+            .build();
+        this.getRegistryData = GetRegistryDataRequest.newBuilder().setRegistry(RegistryType.SOUND_EVENT).build();
+    }
+
+    @Benchmark
+    public Object sendMessage() {
+        return NativeBridgeFfi.sendMessage(this.sendMessage);
+    }
+
+    @Benchmark
+    public void sendMessageAsync() {
+        NativeBridgeFfi.sendMessageAsync(this.sendMessage);
+    }
+
+    @Benchmark
+    public Object callEvent() {
+        return NativeBridgeFfi.callEvent(this.callEvent);
+    }
+
+    @Benchmark
+    public Object registerEvent() {
+        return NativeBridgeFfi.registerEvent(this.registerEvent);
+    }
+
+    @Benchmark
+    public void registerEventAsync() {
+        NativeBridgeFfi.registerEventAsync(this.registerEvent);
+    }
+
+    @Benchmark
+    public Object getRegistryData() {
+        return NativeBridgeFfi.getRegistryData(this.getRegistryData);
+    }
+}
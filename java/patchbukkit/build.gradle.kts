@@ -27,7 +27,9 @@ protobuf {
     generateProtoTasks {
         all().forEach { task ->
             task.plugins {
-                create("ffi")
+                create("ffi") {
+                    option("pooled")
+                }
             }
         }
     }
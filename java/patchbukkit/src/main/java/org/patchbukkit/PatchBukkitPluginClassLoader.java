@@ -42,9 +42,11 @@ public class PatchBukkitPluginClassLoader
         File file,
         URL[] extraUrls
     ) throws MalformedURLException, InvalidDescriptionException {
-        super(buildUrls(file, extraUrls), parent);
+        PluginDescriptionFile description = loadDescription(file);
+        // Named after the plugin, so stack frames of plugin classes tell which plugin they are from
+        super(description.getName(), buildUrls(file, extraUrls), parent);
         this.file = file;
-        this.description = loadDescription(file);
+        this.description = description;
         this.dataFolder = new File(file.getParentFile(), description.getName());
     }
 
@@ -7,6 +7,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.Server;
@@ -21,6 +22,7 @@ import org.jetbrains.annotations.Nullable;
 import org.jspecify.annotations.NonNull;
 import org.patchbukkit.events.PatchBukkitEventManager;
 import org.patchbukkit.permissions.PatchBukkitPermissionManager;
+import patchbukkit.bridge.JavaBridgeFfi;
 
 @SuppressWarnings("removal")
 public class PatchBukkitPluginManager implements PluginManager {
@@ -32,6 +34,7 @@ public class PatchBukkitPluginManager implements PluginManager {
     public PatchBukkitPluginManager(Server server) {
         this.server = server;
         this.eventManager = new PatchBukkitEventManager(server);
+        JavaBridgeFfi.register(this.eventManager);
         this.permissionManager = new PatchBukkitPermissionManager();
     }
 
@@ -109,6 +112,14 @@ public class PatchBukkitPluginManager implements PluginManager {
         this.eventManager.callEvent(event);
     }
 
+    /**
+     * Like {@link #callEvent}, but asynchronous events run on virtual threads and the returned
+     * future completes once every listener ran.
+     */
+    public <T extends Event> @NotNull CompletableFuture<T> callEventAsync(@NotNull T event) {
+        return this.eventManager.callEventAsync(event);
+    }
+
     @Override
     public void registerEvents(@NotNull Listener listener, @NotNull Plugin plugin) {
         this.eventManager.registerEvents(listener, plugin);
@@ -158,6 +169,7 @@ public class PatchBukkitPluginManager implements PluginManager {
             } catch (Throwable ex) {
                 server.getLogger().severe("Error enabling " + plugin.getName() + ": " + ex.getMessage());
             }
+            this.eventManager.refreshInterest();
         }
     }
 
@@ -165,6 +177,7 @@ public class PatchBukkitPluginManager implements PluginManager {
     public void disablePlugin(@NotNull Plugin plugin) {
         if (plugin.isEnabled()) {
             plugin.getPluginLoader().disablePlugin(plugin);
+            this.eventManager.refreshInterest();
         }
     }
 
@@ -4,10 +4,13 @@ import java.util.UUID;
 
 public class BridgeUtils {
     public static UUID convertUuid(patchbukkit.common.UUID uuid) {
-        return UUID.fromString(uuid.getValue());
+        return new UUID(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
     }
 
     public static patchbukkit.common.UUID convertUuid(UUID uuid) {
-        return patchbukkit.common.UUID.newBuilder().setValue(uuid.toString()).build();
+        return patchbukkit.common.UUID.newBuilder()
+            .setMostSignificantBits(uuid.getMostSignificantBits())
+            .setLeastSignificantBits(uuid.getLeastSignificantBits())
+            .build();
     }
 }
@@ -99,7 +99,7 @@ public class PatchBukkitPlayer
         }
 
         var request = SendMessageRequest.newBuilder().setMessage(message).setUuid(BridgeUtils.convertUuid(sender)).build();
-        NativeBridgeFfi.sendMessage(request);
+        NativeBridgeFfi.sendMessageAsync(request);
     }
 
     @Override
@@ -730,7 +730,7 @@ public class PatchBukkitPlayer
             .setPitch(pitch);
 
         if (seed.isPresent()) request.setSeed(seed.getAsLong());
-        NativeBridgeFfi.playerPlaySound(request.build());
+        NativeBridgeFfi.playerPlaySoundAsync(request.build());
     }
 
     @Override
@@ -767,7 +767,7 @@ public class PatchBukkitPlayer
             .setPitch(pitch);
 
         if (seed.isPresent()) request.setSeed(seed.getAsLong());
-        NativeBridgeFfi.playerEntityPlaySound(request.build());
+        NativeBridgeFfi.playerEntityPlaySoundAsync(request.build());
     }
 
     @Override
@@ -0,0 +1,190 @@
+package org.patchbukkit.events;
+
+import org.bukkit.event.Event;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs the listeners of asynchronous events on virtual threads.
+ *
+ * Priority bands still run one after the other, so a listener sees what lower priorities
+ * did to the event. Within a band every plugin gets a task of its own, and the tasks of
+ * different plugins run concurrently. Each plugin has a lane its tasks queue up in, so a
+ * plugin never runs two listeners at once and sees its events in the order they reached it.
+ *
+ * A listener that fires an asynchronous event and waits for it would deadlock if its own
+ * plugin listens to that event too, since the new task would queue up behind the waiting
+ * one. Every task therefore knows which plugins' lanes are held up by the call it runs in,
+ * and {@link #dispatchAndWait} calls the listeners of those plugins right away instead of
+ * queueing them. Independent calls can wait on each other too, such as a listener of A
+ * waiting for B's lane while a listener of B waits for A's. Every wait is kept in a
+ * wait-for graph, and a plugin whose lane waits on the calling thread, however indirectly,
+ * has its listeners called right away as well. Its lane is blocked waiting, so none of its
+ * listeners runs at the same time.
+ */
+class AsyncEventDispatcher {
+    /** The plugins whose lanes wait for the task running on this thread, its own included. */
+    private static final ScopedValue<Set<Plugin>> HELD_LANES = ScopedValue.newInstance();
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("PatchBukkit Async Event ", 0).factory());
+    /** The last task of every plugin with tasks queued or running. */
+    private final Map<Plugin, CompletableFuture<Void>> lanes = new ConcurrentHashMap<>();
+    private final BiConsumer<RegisteredListener, Event> callListener;
+    /**
+     * For every plugin whose lane waits in {@link #dispatchAndWait}, how many waits it has on
+     * every other plugin's lane. Guarded by itself.
+     */
+    private final Map<Plugin, Map<Plugin, Integer>> waitsFor = new HashMap<>();
+
+    /**
+     * @param callListener Calls one listener and reports whatever it throws
+     */
+    AsyncEventDispatcher(@NotNull BiConsumer<RegisteredListener, Event> callListener) {
+        this.callListener = callListener;
+    }
+
+    /** Completes once every listener of the event ran, it never completes exceptionally. */
+    @NotNull
+    CompletableFuture<Void> dispatch(@NotNull Event event) {
+        RegisteredListener[] listeners = event.getHandlers().getRegisteredListeners();
+
+        CompletableFuture<Void> done = CompletableFuture.completedFuture(null);
+        for (int band = 0; band < PatchBukkitEventManager.PRIORITY_BANDS; band++) {
+            Map<Plugin, List<RegisteredListener>> byPlugin = groupByPlugin(listeners, band);
+            if (byPlugin.isEmpty()) continue;
+
+            done = done.thenCompose(ignored -> CompletableFuture.allOf(byPlugin.entrySet().stream()
+                .map(entry -> this.enqueue(entry.getKey(), Set.of(), () -> this.callAll(entry.getValue(), event)))
+                .toArray(CompletableFuture[]::new)));
+        }
+        return done;
+    }
+
+    /**
+     * Returns once every listener of the event ran. Listeners of plugins whose lane waits on
+     * the calling thread run on it, the others are queued as in {@link #dispatch}.
+     */
+    void dispatchAndWait(@NotNull Event event) {
+        Set<Plugin> held = HELD_LANES.isBound() ? HELD_LANES.get() : Set.of();
+        RegisteredListener[] listeners = event.getHandlers().getRegisteredListeners();
+
+        for (int band = 0; band < PatchBukkitEventManager.PRIORITY_BANDS; band++) {
+            Map<Plugin, List<RegisteredListener>> byPlugin = groupByPlugin(listeners, band);
+            if (byPlugin.isEmpty()) continue;
+
+            Map<Plugin, List<RegisteredListener>> inline = new LinkedHashMap<>();
+            Map<Plugin, List<RegisteredListener>> waitedOn = new LinkedHashMap<>();
+            synchronized (this.waitsFor) {
+                for (Map.Entry<Plugin, List<RegisteredListener>> entry : byPlugin.entrySet()) {
+                    if (held.contains(entry.getKey()) || this.waitsOn(entry.getKey(), held)) {
+                        inline.put(entry.getKey(), entry.getValue());
+                    } else {
+                        waitedOn.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                this.addWaits(held, waitedOn.keySet(), 1);
+            }
+
+            try {
+                List<CompletableFuture<Void>> queued = new ArrayList<>();
+                for (Map.Entry<Plugin, List<RegisteredListener>> entry : waitedOn.entrySet()) {
+                    queued.add(this.enqueue(entry.getKey(), held, () -> this.callAll(entry.getValue(), event)));
+                }
+                if (!inline.isEmpty()) {
+                    // Their lanes now wait on this thread as well
+                    Set<Plugin> heldInline = new HashSet<>(held);
+                    heldInline.addAll(inline.keySet());
+                    ScopedValue.where(HELD_LANES, Set.copyOf(heldInline))
+                        .run(() -> inline.values().forEach(pluginListeners -> this.callAll(pluginListeners, event)));
+                }
+                CompletableFuture.allOf(queued.toArray(CompletableFuture[]::new)).join();
+            } finally {
+                synchronized (this.waitsFor) {
+                    this.addWaits(held, waitedOn.keySet(), -1);
+                }
+            }
+        }
+    }
+
+    /** Whether the plugin's lane waits on one of the targets, directly or through others. */
+    private boolean waitsOn(Plugin plugin, Set<Plugin> targets) {
+        if (targets.isEmpty()) return false;
+
+        Set<Plugin> seen = new HashSet<>();
+        Deque<Plugin> pending = new ArrayDeque<>();
+        pending.add(plugin);
+        while (!pending.isEmpty()) {
+            Map<Plugin, Integer> waits = this.waitsFor.get(pending.poll());
+            if (waits == null) continue;
+
+            for (Plugin waited : waits.keySet()) {
+                if (targets.contains(waited)) return true;
+                if (seen.add(waited)) pending.add(waited);
+            }
+        }
+        return false;
+    }
+
+    private void addWaits(Set<Plugin> waiting, Set<Plugin> waited, int delta) {
+        for (Plugin from : waiting) {
+            for (Plugin to : waited) {
+                Map<Plugin, Integer> waits = this.waitsFor.computeIfAbsent(from, ignored -> new HashMap<>());
+                waits.merge(to, delta, (count, change) -> count + change == 0 ? null : count + change);
+                if (waits.isEmpty()) this.waitsFor.remove(from);
+            }
+        }
+    }
+
+    /**
+     * Queues the task in the plugin's lane. The lane is dropped again once its last task
+     * ran, so plugins without queued tasks, disabled ones included, are not kept around.
+     *
+     * @param held The lanes waiting for the task, besides the plugin's own
+     */
+    private CompletableFuture<Void> enqueue(Plugin plugin, Set<Plugin> held, Runnable task) {
+        Set<Plugin> heldByTask = new HashSet<>(held);
+        heldByTask.add(plugin);
+        Runnable scoped = () -> ScopedValue.where(HELD_LANES, Set.copyOf(heldByTask)).run(task);
+
+        CompletableFuture<Void> queued = this.lanes.compute(plugin, (ignored, tail) ->
+            tail == null ? CompletableFuture.runAsync(scoped, this.executor) : tail.thenRunAsync(scoped, this.executor));
+        queued.whenComplete((result, failure) -> this.lanes.remove(plugin, queued));
+        return queued;
+    }
+
+    private void callAll(List<RegisteredListener> listeners, Event event) {
+        for (RegisteredListener listener : listeners) {
+            if (!listener.getPlugin().isEnabled()) continue;
+
+            this.callListener.accept(listener, event);
+        }
+    }
+
+    /** The band's listeners per plugin, in HandlerList order. */
+    private static Map<Plugin, List<RegisteredListener>> groupByPlugin(RegisteredListener[] listeners, int band) {
+        Map<Plugin, List<RegisteredListener>> byPlugin = new LinkedHashMap<>();
+        for (RegisteredListener listener : listeners) {
+            if (PatchBukkitEventManager.priorityBand(listener.getPriority()) != band) continue;
+
+            byPlugin.computeIfAbsent(listener.getPlugin(), ignored -> new ArrayList<>()).add(listener);
+        }
+        return byPlugin;
+    }
+}
@@ -0,0 +1,232 @@
+package org.patchbukkit.events;
+
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassHierarchyResolver;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.DynamicConstantDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compiles the listeners of a priority band into a hidden class that calls them one after
+ * the other, instead of going through RegisteredListener, TimedEventExecutor and the
+ * EventExecutor of each listener.
+ *
+ * The generated {@code dispatch} is straight-line code: per listener it checks that the
+ * plugin is enabled, inlines the ignoreCancelled check and invokes a method handle straight
+ * to the {@code @EventHandler} method. Plugins, handles and failure reporters are loaded as
+ * class data constants, so the JIT can inline through them. Listeners registered with their
+ * own EventExecutor, whose method is unknown, are called through RegisteredListener as before.
+ * Timings are skipped, Paper no longer records them.
+ */
+class DispatchCompiler {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType LISTENER_TYPE = MethodType.methodType(void.class, Event.class);
+    private static final MethodType FAILURE_TYPE = MethodType.methodType(void.class, Event.class, Throwable.class);
+    private static final EventDispatcher NO_LISTENERS = event -> false;
+
+    private static final ClassDesc CD_DISPATCHER = ClassDesc.of(EventDispatcher.class.getName());
+    private static final ClassDesc CD_COMPILED = ClassDesc.of(EventDispatcher.class.getPackageName(), "CompiledEventDispatcher");
+    private static final ClassDesc CD_EVENT = ClassDesc.of(Event.class.getName());
+    private static final ClassDesc CD_PLUGIN = ClassDesc.of(Plugin.class.getName());
+    private static final ClassDesc CD_CANCELLABLE = ClassDesc.of(Cancellable.class.getName());
+    private static final MethodTypeDesc MTD_BOOLEAN = MethodTypeDesc.of(ConstantDescs.CD_boolean);
+    private static final MethodTypeDesc MTD_LISTENER = MethodTypeDesc.of(ConstantDescs.CD_void, CD_EVENT);
+    private static final MethodTypeDesc MTD_FAILURE = MethodTypeDesc.of(ConstantDescs.CD_void, CD_EVENT, ConstantDescs.CD_Throwable);
+
+    /** Class data entries per listener: its plugin, its target and its failure reporter. */
+    private static final int CONSTANTS_PER_LISTENER = 3;
+
+    private static final MethodHandle IS_INSTANCE;
+    private static final MethodHandle CALL_EVENT;
+    private static final MethodHandle REPORT_FAILURE;
+
+    static {
+        try {
+            IS_INSTANCE = LOOKUP.findVirtual(Class.class, "isInstance",
+                MethodType.methodType(boolean.class, Object.class));
+            CALL_EVENT = LOOKUP.findVirtual(RegisteredListener.class, "callEvent", LISTENER_TYPE);
+            REPORT_FAILURE = LOOKUP.findVirtual(DispatchCompiler.class, "reportFailure",
+                MethodType.methodType(void.class, RegisteredListener.class, Event.class, Throwable.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Logger logger;
+    private final ClassFile classFile;
+    private final Map<RegisteredListener, Method> methods = Collections.synchronizedMap(new WeakHashMap<>());
+
+    DispatchCompiler(@NotNull Logger logger) {
+        this.logger = logger;
+        this.classFile = ClassFile.of(ClassFile.ClassHierarchyResolverOption.of(
+            ClassHierarchyResolver.defaultResolver().orElse(
+                ClassHierarchyResolver.ofClassLoading(DispatchCompiler.class.getClassLoader()))));
+    }
+
+    /**
+     * Remembers the {@code @EventHandler} method behind a listener, so compiled dispatchers
+     * can call it directly.
+     */
+    void registerMethod(@NotNull RegisteredListener listener, @NotNull Method method) {
+        this.methods.put(listener, method);
+    }
+
+    /**
+     * Returns a dispatcher for the listeners, in the given order. Falls back to calling them
+     * through RegisteredListener if the hidden class cannot be defined.
+     */
+    @NotNull
+    EventDispatcher compile(@NotNull RegisteredListener[] listeners) {
+        if (listeners.length == 0) return NO_LISTENERS;
+
+        try {
+            return this.defineDispatcher(listeners);
+        } catch (Throwable t) {
+            this.logger.log(Level.WARNING, "Could not compile event dispatcher, calling listeners one by one", t);
+            return event -> this.dispatchEach(listeners, event);
+        }
+    }
+
+    private EventDispatcher defineDispatcher(RegisteredListener[] listeners) throws Throwable {
+        List<Object> constants = new ArrayList<>(listeners.length * CONSTANTS_PER_LISTENER);
+        for (RegisteredListener listener : listeners) {
+            constants.add(listener.getPlugin());
+            constants.add(this.target(listener));
+            constants.add(MethodHandles.insertArguments(REPORT_FAILURE, 0, this, listener));
+        }
+
+        byte[] bytes = this.classFile.build(CD_COMPILED, clb -> clb
+            .withFlags(ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC)
+            .withSuperclass(ConstantDescs.CD_Object)
+            .withInterfaceSymbols(CD_DISPATCHER)
+            .withMethodBody(ConstantDescs.INIT_NAME, ConstantDescs.MTD_void, ClassFile.ACC_PUBLIC, cob -> cob
+                .aload(0)
+                .invokespecial(ConstantDescs.CD_Object, ConstantDescs.INIT_NAME, ConstantDescs.MTD_void)
+                .return_())
+            .withMethodBody("dispatch", MethodTypeDesc.of(ConstantDescs.CD_boolean, CD_EVENT), ClassFile.ACC_PUBLIC,
+                cob -> generateDispatch(cob, listeners)));
+
+        MethodHandles.Lookup compiled = LOOKUP.defineHiddenClassWithClassData(bytes, List.copyOf(constants), true);
+        return (EventDispatcher) compiled.findConstructor(compiled.lookupClass(), MethodType.methodType(void.class)).invoke();
+    }
+
+    /**
+     * Locals: 0 is the dispatcher, 1 the event, 2 whether a listener of an enabled plugin
+     * was found and 3 the exception a listener threw.
+     */
+    private static void generateDispatch(CodeBuilder cob, RegisteredListener[] listeners) {
+        cob.iconst_0().istore(2);
+
+        for (int i = 0; i < listeners.length; i++) {
+            int constant = i * CONSTANTS_PER_LISTENER;
+            Label skip = cob.newLabel();
+
+            cob.ldc(classData(constant, CD_PLUGIN))
+                .invokeinterface(CD_PLUGIN, "isEnabled", MTD_BOOLEAN)
+                .ifeq(skip)
+                .iconst_1()
+                .istore(2);
+
+            if (listeners[i].isIgnoringCancelled()) {
+                Label call = cob.newLabel();
+                cob.aload(1)
+                    .instanceOf(CD_CANCELLABLE)
+                    .ifeq(call)
+                    .aload(1)
+                    .checkcast(CD_CANCELLABLE)
+                    .invokeinterface(CD_CANCELLABLE, "isCancelled", MTD_BOOLEAN)
+                    .ifne(skip)
+                    .labelBinding(call);
+            }
+
+            cob.trying(
+                block -> block
+                    .ldc(classData(constant + 1, ConstantDescs.CD_MethodHandle))
+                    .aload(1)
+                    .invokevirtual(ConstantDescs.CD_MethodHandle, "invokeExact", MTD_LISTENER),
+                catches -> catches.catchingAll(handler -> handler
+                    .astore(3)
+                    .ldc(classData(constant + 2, ConstantDescs.CD_MethodHandle))
+                    .aload(1)
+                    .aload(3)
+                    .invokevirtual(ConstantDescs.CD_MethodHandle, "invokeExact", MTD_FAILURE)));
+
+            cob.labelBinding(skip);
+        }
+
+        cob.iload(2).ireturn();
+    }
+
+    private static DynamicConstantDesc<Object> classData(int index, ClassDesc type) {
+        return DynamicConstantDesc.ofNamed(ConstantDescs.BSM_CLASS_DATA_AT, ConstantDescs.DEFAULT_NAME, type, index);
+    }
+
+    /**
+     * A handle of type (Event)void calling the listener's {@code @EventHandler} method, which
+     * skips events that are not of its parameter type like EventExecutor.create does.
+     */
+    private MethodHandle target(RegisteredListener listener) throws IllegalAccessException {
+        Method method = this.methods.get(listener);
+        if (method == null) {
+            return CALL_EVENT.bindTo(listener);
+        }
+
+        MethodHandle target = LOOKUP.unreflect(method);
+        if (!Modifier.isStatic(method.getModifiers())) {
+            target = target.bindTo(listener.getListener());
+        }
+
+        Class<?> eventClass = method.getParameterTypes()[0];
+        MethodHandle isEventClass = IS_INSTANCE.bindTo(eventClass).asType(MethodType.methodType(boolean.class, Event.class));
+        return MethodHandles.guardWithTest(
+            isEventClass,
+            target.asType(LISTENER_TYPE),
+            MethodHandles.empty(LISTENER_TYPE)
+        );
+    }
+
+    private boolean dispatchEach(RegisteredListener[] listeners, Event event) {
+        boolean observed = false;
+        for (RegisteredListener listener : listeners) {
+            if (!listener.getPlugin().isEnabled()) continue;
+            observed = true;
+
+            try {
+                listener.callEvent(event);
+            } catch (Throwable ex) {
+                this.reportFailure(listener, event, ex);
+            }
+        }
+        return observed;
+    }
+
+    private void reportFailure(RegisteredListener listener, Event event, Throwable ex) {
+        this.logger.log(
+            Level.SEVERE,
+            "Could not pass event " + event.getEventName()
+                + " to " + listener.getPlugin().getPluginMeta().getDisplayName(),
+            ex
+        );
+    }
+}
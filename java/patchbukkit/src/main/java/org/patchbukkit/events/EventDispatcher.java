@@ -0,0 +1,18 @@
+package org.patchbukkit.events;
+
+import org.bukkit.event.Event;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Calls the listeners of one priority band of a HandlerList, as compiled by
+ * {@link DispatchCompiler} for the listeners baked at the time.
+ */
+interface EventDispatcher {
+
+    /**
+     * Passes the event to every listener of an enabled plugin, in HandlerList order.
+     *
+     * @return Whether any listener belonged to an enabled plugin
+     */
+    boolean dispatch(@NotNull Event event);
+}
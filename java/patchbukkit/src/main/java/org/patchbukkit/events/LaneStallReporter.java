@@ -0,0 +1,68 @@
+package org.patchbukkit.events;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.patchbukkit.loader.PatchBukkitPluginClassLoader;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Java's side of the JVM lane watchdog in rust/src/java/jvm/watchdog.rs, which calls
+ * {@link #describe} when a lane has been running one command for too long.
+ *
+ * Plugin class loaders are named after their plugin, so the frames of a stack tell which
+ * plugins' code the lane is stuck in.
+ */
+public final class LaneStallReporter {
+    private static final Map<Integer, Thread> LANE_THREADS = new ConcurrentHashMap<>();
+
+    private LaneStallReporter() {
+    }
+
+    /** Called from Rust on every lane thread once it is attached to the JVM. */
+    public static void registerLaneThread(int lane) {
+        LANE_THREADS.put(lane, Thread.currentThread());
+    }
+
+    /**
+     * Names the plugins with code on the lane's stack, innermost first, followed by the
+     * stack itself.
+     */
+    @NotNull
+    public static String describe(int lane) {
+        Thread thread = LANE_THREADS.get(lane);
+        if (thread == null) return "the lane thread is not known to the JVM";
+
+        StackTraceElement[] stack = thread.getStackTrace();
+        Set<String> plugins = new LinkedHashSet<>();
+        for (StackTraceElement frame : stack) {
+            String plugin = pluginOf(frame);
+            if (plugin != null) plugins.add(plugin);
+        }
+
+        StringBuilder report = new StringBuilder(plugins.isEmpty()
+            ? "no plugin code on the stack"
+            : "stuck in " + String.join(" called from ", plugins));
+        for (StackTraceElement frame : stack) {
+            report.append("\n\tat ").append(frame);
+        }
+        return report.toString();
+    }
+
+    @Nullable
+    private static String pluginOf(@NotNull StackTraceElement frame) {
+        String loaderName = frame.getClassLoaderName();
+        if (loaderName == null) return null;
+
+        Plugin plugin = Bukkit.getPluginManager().getPlugin(loaderName);
+        if (plugin == null || !(plugin.getClass().getClassLoader() instanceof PatchBukkitPluginClassLoader)) {
+            return null;
+        }
+        return plugin.getName();
+    }
+}
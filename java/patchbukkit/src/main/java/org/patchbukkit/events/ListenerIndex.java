@@ -0,0 +1,103 @@
+package org.patchbukkit.events;
+
+import org.bukkit.event.HandlerList;
+import org.bukkit.plugin.RegisteredListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Listeners of every HandlerList grouped by JVM lane and priority band and compiled into one
+ * {@link EventDispatcher} per lane and band, so firing an event for one band on one lane
+ * only runs the listeners of that band of the plugins on the lane.
+ *
+ * HandlerList bakes a new array whenever a listener is registered or unregistered, so an
+ * entry is rebuilt as soon as the array it was built from is no longer the baked one. A
+ * lane and band is only compiled once it is fired, so registering a listener costs one
+ * hidden class for the band that next fires rather than one for every lane and band.
+ */
+class ListenerIndex {
+    private static final RegisteredListener[] NO_LISTENERS = new RegisteredListener[0];
+
+    private final Map<HandlerList, Entry> entries = new ConcurrentHashMap<>();
+    private final DispatchCompiler compiler;
+
+    /**
+     * The dispatcher of {@code lane} and {@code band} is at
+     * {@code lane * PRIORITY_BANDS + band}, lanes without listeners are left out at the end.
+     */
+    private record Entry(RegisteredListener[] baked, int lanes, AtomicReferenceArray<EventDispatcher> dispatchers) {
+    }
+
+    ListenerIndex(@NotNull DispatchCompiler compiler) {
+        this.compiler = compiler;
+    }
+
+    /**
+     * Returns the dispatcher calling the listeners in the priority band of every plugin on
+     * the lane, in the order the HandlerList calls them.
+     */
+    @NotNull
+    EventDispatcher getDispatcher(@NotNull HandlerList handlers, int lane, int priorityBand) {
+        RegisteredListener[] baked = handlers.getRegisteredListeners();
+        if (baked.length == 0) {
+            this.entries.remove(handlers);
+            return this.compiler.compile(NO_LISTENERS);
+        }
+
+        Entry entry = this.entries.get(handlers);
+        if (entry == null || entry.baked() != baked) {
+            entry = index(baked);
+            this.entries.put(handlers, entry);
+        }
+
+        if (lane < 0 || lane >= entry.lanes()
+            || priorityBand < 0 || priorityBand >= PatchBukkitEventManager.PRIORITY_BANDS) {
+            return this.compiler.compile(NO_LISTENERS);
+        }
+
+        int slot = lane * PatchBukkitEventManager.PRIORITY_BANDS + priorityBand;
+        EventDispatcher dispatcher = entry.dispatchers().get(slot);
+        if (dispatcher == null) {
+            // Another thread compiling the same slot at once only costs a spare class
+            dispatcher = this.compiler.compile(select(baked, lane, priorityBand));
+            if (!entry.dispatchers().compareAndSet(slot, null, dispatcher)) {
+                dispatcher = entry.dispatchers().get(slot);
+            }
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Drops the entries of HandlerLists whose listeners changed since they were indexed, so
+     * listeners of unregistered or disabled plugins are not kept alive by the index. Called
+     * whenever listeners may have been unregistered.
+     */
+    void prune() {
+        this.entries.entrySet().removeIf(entry -> entry.getValue().baked() != entry.getKey().getRegisteredListeners());
+    }
+
+    private static Entry index(RegisteredListener[] baked) {
+        int lanes = 0;
+        for (RegisteredListener listener : baked) {
+            lanes = Math.max(lanes, PluginLanes.of(listener.getPlugin()) + 1);
+        }
+        return new Entry(baked, lanes, new AtomicReferenceArray<>(lanes * PatchBukkitEventManager.PRIORITY_BANDS));
+    }
+
+    /** The listeners of the plugins on the lane in the priority band, in HandlerList order. */
+    private static RegisteredListener[] select(RegisteredListener[] baked, int lane, int priorityBand) {
+        List<RegisteredListener> selected = new ArrayList<>();
+        for (RegisteredListener listener : baked) {
+            if (PluginLanes.of(listener.getPlugin()) == lane
+                && PatchBukkitEventManager.priorityBand(listener.getPriority()) == priorityBand) {
+                selected.add(listener);
+            }
+        }
+        return selected.toArray(NO_LISTENERS);
+    }
+}
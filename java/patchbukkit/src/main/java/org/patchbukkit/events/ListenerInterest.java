@@ -0,0 +1,83 @@
+package org.patchbukkit.events;
+
+import org.bukkit.event.HandlerList;
+import org.bukkit.plugin.RegisteredListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Java's side of the listener interest table in rust/src/events/interest.rs.
+ *
+ * Rust owns one int slot per event type its Pumpkin handlers can fire and JVM lane, and
+ * skips the JVM for a priority band whose bit is clear. The slots of an event type are
+ * rewritten from its HandlerList whenever listeners or the enabled state of a plugin change.
+ * A clear bit for a band with listeners drops events, so updates must happen before a
+ * registration returns.
+ */
+public final class ListenerInterest {
+    private static final VarHandle INT = ValueLayout.JAVA_INT.varHandle();
+
+    private static volatile MemorySegment table = MemorySegment.NULL;
+    private static volatile Map<String, Integer> slots;
+    private static volatile int lanesPerType;
+
+    private ListenerInterest() {
+    }
+
+    /**
+     * Called from Rust while the JVM is initialized, before any plugin is loaded.
+     *
+     * @param address      Address of the table, {@code lanesPerType} ints per event type
+     * @param eventTypes   Comma separated Bukkit event class names, in slot order
+     * @param lanesPerType Slots of every event type, one per lane Rust can run
+     */
+    public static void init(long address, @NotNull String eventTypes, int lanesPerType) {
+        String[] names = eventTypes.split(",");
+        Map<String, Integer> bySlot = new HashMap<>();
+        for (int slot = 0; slot < names.length; slot++) {
+            bySlot.put(names[slot], slot);
+        }
+
+        table = MemorySegment.ofAddress(address).reinterpret((long) names.length * lanesPerType * Integer.BYTES);
+        ListenerInterest.lanesPerType = lanesPerType;
+        slots = Map.copyOf(bySlot);
+    }
+
+    /**
+     * Rewrites the slots of the event type from the listeners currently in its HandlerList.
+     * Does nothing for event types Rust cannot fire.
+     */
+    public static synchronized void update(@NotNull String eventType, @NotNull HandlerList handlers) {
+        Map<String, Integer> slots = ListenerInterest.slots;
+        if (slots == null) return;
+        Integer slot = slots.get(eventType);
+        if (slot == null) return;
+
+        int[] masks = new int[lanesPerType];
+        for (RegisteredListener listener : handlers.getRegisteredListeners()) {
+            int lane = PluginLanes.of(listener.getPlugin());
+            if (listener.getPlugin().isEnabled() && lane < masks.length) {
+                masks[lane] |= 1 << PatchBukkitEventManager.priorityBand(listener.getPriority());
+            }
+        }
+        for (int lane = 0; lane < masks.length; lane++) {
+            INT.setRelease(table, ((long) slot * masks.length + lane) * Integer.BYTES, masks[lane]);
+        }
+    }
+
+    /**
+     * Whether Pumpkin has an equivalent of the event type, going by the event types Rust
+     * published. Null until Rust published them.
+     */
+    @Nullable
+    public static Boolean isPumpkinEvent(@NotNull String eventType) {
+        Map<String, Integer> slots = ListenerInterest.slots;
+        return slots == null ? null : slots.containsKey(eventType);
+    }
+}
@@ -1,6 +1,5 @@
 package org.patchbukkit.events;
 
-import com.google.protobuf.InvalidProtocolBufferException;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.gson.GsonComponentSerializer;
 import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
@@ -8,7 +7,7 @@ import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import patchbukkit.common.UUID;
+import org.patchbukkit.bridge.BridgeUtils;
 import patchbukkit.events.Event;
 import patchbukkit.events.FireEventResponse;
 import patchbukkit.events.PlayerJoinEvent;
@@ -17,17 +16,10 @@ import java.util.logging.Logger;
 
 public class PatchBukkitEventFactory {
     private static final Logger LOGGER = Logger.getLogger("PatchBukkit");
+    private static final Object[] NO_FIELDS = new Object[0];
 
-    @Nullable
-    public static org.bukkit.event.Event createEventFromBytes(byte[] data) {
-        try {
-            Event event = Event.parseFrom(data);
-            return createEvent(event);
-        } catch (InvalidProtocolBufferException e) {
-            LOGGER.severe("Failed to parse Event: " + e.getMessage());
-            return null;
-        }
-    }
+    /** Dirty bit of PlayerJoinEvent's join message, the first of its {@link #mutableFields}. */
+    private static final int JOIN_MESSAGE = 1;
 
     @Nullable
     public static org.bukkit.event.Event createEvent(@NotNull Event event) {
@@ -36,7 +28,7 @@ public class PatchBukkitEventFactory {
         return switch (dataCase) {
             case PLAYER_JOIN -> {
                 PlayerJoinEvent joinEvent = event.getPlayerJoin();
-                Player player = getPlayer(joinEvent.getPlayerUuid().getValue());
+                Player player = getPlayer(BridgeUtils.convertUuid(joinEvent.getPlayerUuid()));
                 if (player == null) yield null;
 
                 Component joinMessage = GsonComponentSerializer.gson().deserialize(joinEvent.getJoinMessage());
@@ -49,31 +41,64 @@ public class PatchBukkitEventFactory {
         };
     }
 
+    /**
+     * The values of the fields listeners may change, in dirty bit order. Taken right after
+     * the event is created and again after dispatch: every field holds an immutable value, so
+     * a field was changed exactly when the two references differ.
+     */
+    @NotNull
+    public static Object[] mutableFields(@NotNull org.bukkit.event.Event event) {
+        if (event instanceof org.bukkit.event.player.PlayerJoinEvent joinEvent) {
+            return new Object[] { joinEvent.joinMessage() };
+        }
+        return NO_FIELDS;
+    }
+
+    /**
+     * Builds the response to a fired event with only the fields listeners changed. An event
+     * nobody touched answers with no data at all, so Rust skips decoding it.
+     *
+     * @param event  The event after dispatch
+     * @param before The event's {@link #mutableFields} before dispatch
+     */
     @NotNull
-    public static byte[] toFireEventResponse(@NotNull org.bukkit.event.Event event) {
+    public static FireEventResponse toFireEventResponse(@NotNull org.bukkit.event.Event event, @NotNull Object[] before) {
         boolean cancelled = event instanceof org.bukkit.event.Cancellable c && c.isCancelled();
 
         FireEventResponse.Builder builder = FireEventResponse.newBuilder()
             .setCancelled(cancelled);
 
+        int dirty = dirtyFields(before, mutableFields(event));
+        if (dirty == 0) {
+            return builder.build();
+        }
+
         Event.Builder eventBuilder = Event.newBuilder();
 
         if (event instanceof org.bukkit.event.player.PlayerJoinEvent joinEvent) {
-            String joinMessage = GsonComponentSerializer.gson().serialize(joinEvent.joinMessage());
-
-            eventBuilder.setPlayerJoin(
-                PlayerJoinEvent.newBuilder()
-                    .setPlayerUuid(UUID.newBuilder()
-                        .setValue(joinEvent.getPlayer().getUniqueId().toString())
-                        .build())
-                    .setJoinMessage(joinMessage)
-                    .build()
-            );
+            PlayerJoinEvent.Builder joinBuilder = PlayerJoinEvent.newBuilder();
+            if ((dirty & JOIN_MESSAGE) != 0) {
+                // Listeners clear the message with null, Pumpkin has no message but an empty one
+                Component joinMessage = joinEvent.joinMessage();
+                joinBuilder.setJoinMessage(GsonComponentSerializer.gson().serialize(
+                    joinMessage != null ? joinMessage : Component.empty()));
+            }
+            eventBuilder.setPlayerJoin(joinBuilder.build());
         }
 
         builder.setData(eventBuilder.build());
 
-        return builder.build().toByteArray();
+        return builder.build();
+    }
+
+    private static int dirtyFields(@NotNull Object[] before, @NotNull Object[] after) {
+        int dirty = 0;
+        for (int field = 0; field < after.length; field++) {
+            if (before[field] != after[field]) {
+                dirty |= 1 << field;
+            }
+        }
+        return dirty;
     }
 
     public static boolean isCancellable(@NotNull org.bukkit.event.Event event) {
@@ -81,17 +106,11 @@ public class PatchBukkitEventFactory {
     }
 
     @Nullable
-    private static Player getPlayer(@NotNull String uuidStr) {
-        try {
-            java.util.UUID uuid = java.util.UUID.fromString(uuidStr);
-            Player player = Bukkit.getServer().getPlayer(uuid);
-            if (player == null) {
-                LOGGER.warning("EventFactory: Player not found for UUID " + uuidStr);
-            }
-            return player;
-        } catch (IllegalArgumentException e) {
-            LOGGER.severe("EventFactory: Invalid UUID string: " + uuidStr);
-            return null;
+    private static Player getPlayer(@NotNull java.util.UUID uuid) {
+        Player player = Bukkit.getServer().getPlayer(uuid);
+        if (player == null) {
+            LOGGER.warning("EventFactory: Player not found for UUID " + uuid);
         }
+        return player;
     }
 }
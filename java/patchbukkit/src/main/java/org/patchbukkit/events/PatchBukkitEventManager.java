@@ -2,6 +2,7 @@ package org.patchbukkit.events;
 
 import org.bukkit.Server;
 import org.bukkit.Warning;
+import org.bukkit.event.Cancellable;
 import org.bukkit.event.Event;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -19,8 +20,11 @@ import com.google.common.collect.Sets;
 import co.aikar.timings.TimedEventExecutor;
 
 import org.jetbrains.annotations.NotNull;
+import patchbukkit.bridge.JavaBridgeFfi;
 import patchbukkit.bridge.NativeBridgeFfi;
 import patchbukkit.events.CallEventRequest;
+import patchbukkit.events.FireEventRequest;
+import patchbukkit.events.FireEventResponse;
 import patchbukkit.events.PlayerJoinEvent;
 import patchbukkit.events.RegisterEventRequest;
 
@@ -30,22 +34,103 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
-public class PatchBukkitEventManager {
+public class PatchBukkitEventManager implements JavaBridgeFfi.Handler {
+
+    /**
+     * One band per Bukkit priority. Rust registers one handler per event type, band and JVM
+     * lane, and Pumpkin's five priorities put MONITOR after HIGHEST by registering it as
+     * non-blocking.
+     */
+    static final int PRIORITY_BANDS = 6;
+
+    /**
+     * MONITOR listeners must not change the outcome of an event, so Pumpkin fires their band
+     * without waiting for it and ignores whatever they do to the event.
+     */
+    static final int MONITOR_BAND = 5;
+
+    /**
+     * The HandlerList of every event class, resolved once per class instead of by reflection
+     * on every registration. Subclasses without a getHandlerList of their own resolve to the
+     * HandlerList of the superclass declaring it. ClassValue lets plugin event classes be
+     * unloaded together with their plugin.
+     */
+    private static final ClassValue<HandlerList> HANDLER_LISTS = new ClassValue<>() {
+        @Override
+        protected HandlerList computeValue(Class<?> type) {
+            Class<? extends Event> registrationClass = findRegistrationClass(type.asSubclass(Event.class));
+            try {
+                Method method = registrationClass.getDeclaredMethod("getHandlerList");
+                method.setAccessible(true);
+                return (HandlerList) method.invoke(null);
+            } catch (Exception e) {
+                throw new IllegalPluginAccessException(e.toString());
+            }
+        }
+    };
+
+    /**
+     * Where callEvent sends each event class. Starts from the event types Rust published,
+     * or when it has not yet, from Rust's first definite answer for the class.
+     */
+    private static final ClassValue<CallRoute> CALL_ROUTES = new ClassValue<>() {
+        @Override
+        protected CallRoute computeValue(Class<?> type) {
+            CallRoute route = new CallRoute();
+            route.handledByPumpkin = ListenerInterest.isPumpkinEvent(type.getName());
+            return route;
+        }
+    };
+
+    private static final class CallRoute {
+        /** Null while unknown. */
+        volatile Boolean handledByPumpkin;
+    }
 
     private final Server server;
+    private final DispatchCompiler dispatchCompiler;
+    private final ListenerIndex listenerIndex;
+    private final AsyncEventDispatcher asyncDispatcher = new AsyncEventDispatcher(this::callListener);
+    private final Set<String> registeredBands = ConcurrentHashMap.newKeySet();
+    private final Map<String, HandlerList> observedHandlers = new ConcurrentHashMap<>();
 
     public PatchBukkitEventManager(Server server) {
         this.server = server;
+        this.dispatchCompiler = new DispatchCompiler(server.getLogger());
+        this.listenerIndex = new ListenerIndex(this.dispatchCompiler);
     }
 
     public void callEvent(@NotNull Event event) throws IllegalStateException {
+        this.checkThread(event);
+        if (!this.callPumpkin(event)) {
+            // Pumpkin doesn't know this event type, dispatch Java-only
+            this.callEventJavaOnly(event);
+        }
+    }
+
+    private void checkThread(@NotNull Event event) throws IllegalStateException {
         if (event.isAsynchronous() && this.server.isPrimaryThread()) {
             throw new IllegalStateException(event.getEventName() + " may only be triggered asynchronously.");
         } else if (!event.isAsynchronous() && !this.server.isPrimaryThread() && !this.server.isStopping()) {
             throw new IllegalStateException(event.getEventName() + " may only be triggered synchronously.");
         }
+    }
+
+    /**
+     * Hands the event to Pumpkin, which fires it back into Java for the listeners.
+     *
+     * @return Whether Pumpkin handled the event, if not its listeners still have to run
+     */
+    private boolean callPumpkin(@NotNull Event event) {
+        // Custom plugin events never have a Pumpkin equivalent, skip asking Rust about them
+        CallRoute route = CALL_ROUTES.get(event.getClass());
+        if (Boolean.FALSE.equals(route.handledByPumpkin)) {
+            return false;
+        }
 
         var request = CallEventRequest.newBuilder();
         switch (event.getEventName()) {
@@ -66,17 +151,53 @@ public class PatchBukkitEventManager {
         if (response == null) handledByPumpkin = false;
         else handledByPumpkin = response.getHandled();
 
-        if (!handledByPumpkin) {
-            // Pumpkin doesn't know this event type, dispatch Java-only
-            callEventJavaOnly(event);
+        // No response can also mean the player is gone, only an event Java could not encode
+        // tells for sure that Rust will never handle the class
+        if (route.handledByPumpkin == null && (response != null || !request.hasEvent())) {
+            route.handledByPumpkin = handledByPumpkin;
+        }
+        return handledByPumpkin;
+    }
+
+    /**
+     * Fires an event and completes once every listener ran. Events Pumpkin handles go to
+     * Pumpkin as in {@link #callEvent}. The listeners of other asynchronous events run on
+     * virtual threads through the {@link AsyncEventDispatcher}, so the caller does not wait
+     * for slow listeners and no thread of the server is held up. Synchronous events run
+     * right away on the calling thread, which has to be the primary thread.
+     *
+     * @return A future completed with the event after its listeners ran
+     */
+    @NotNull
+    public <T extends Event> CompletableFuture<T> callEventAsync(@NotNull T event) {
+        try {
+            this.checkThread(event);
+        } catch (IllegalStateException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (this.callPumpkin(event)) {
+            return CompletableFuture.completedFuture(event);
+        }
+        if (!event.isAsynchronous()) {
+            this.callEventJavaOnly(event);
+            return CompletableFuture.completedFuture(event);
         }
+        return this.asyncDispatcher.dispatch(event).thenApply(ignored -> event);
     }
 
     /**
     * Java-only event dispatch for events that don't have Pumpkin equivalents.
-    * Used for custom plugin events or unsupported Bukkit events.
+    * Used for custom plugin events or unsupported Bukkit events. Asynchronous
+    * events still return only once their listeners ran, but the listeners of
+    * different plugins run concurrently.
     */
     private void callEventJavaOnly(@NotNull Event event) {
+        if (event.isAsynchronous()) {
+            this.asyncDispatcher.dispatchAndWait(event);
+            return;
+        }
+
         HandlerList handlers = event.getHandlers();
         RegisteredListener[] listeners = handlers.getRegisteredListeners();
 
@@ -85,57 +206,76 @@ public class PatchBukkitEventManager {
                 continue;
             }
 
-            try {
-                registration.callEvent(event);
-            } catch (AuthorNagException ex) {
-                Plugin plugin = registration.getPlugin();
-
-                if (plugin.isNaggable()) {
-                    plugin.setNaggable(false);
-
-                    this.server.getLogger().log(Level.SEVERE, String.format(
-                        "Nag author(s): '%s' of '%s' about the following: %s",
-                        plugin.getPluginMeta().getAuthors(),
-                        plugin.getPluginMeta().getDisplayName(),
-                        ex.getMessage()
-                    ));
-                }
-            } catch (Throwable ex) {
-                this.server.getLogger().log(
-                    Level.SEVERE,
-                    "Could not pass event " + event.getEventName()
-                        + " to " + registration.getPlugin().getPluginMeta().getDisplayName(),
-                    ex
-                );
+            this.callListener(registration, event);
+        }
+    }
+
+    private void callListener(@NotNull RegisteredListener registration, @NotNull Event event) {
+        try {
+            registration.callEvent(event);
+        } catch (AuthorNagException ex) {
+            Plugin plugin = registration.getPlugin();
+
+            if (plugin.isNaggable()) {
+                plugin.setNaggable(false);
+
+                this.server.getLogger().log(Level.SEVERE, String.format(
+                    "Nag author(s): '%s' of '%s' about the following: %s",
+                    plugin.getPluginMeta().getAuthors(),
+                    plugin.getPluginMeta().getDisplayName(),
+                    ex.getMessage()
+                ));
             }
+        } catch (Throwable ex) {
+            this.server.getLogger().log(
+                Level.SEVERE,
+                "Could not pass event " + event.getEventName()
+                    + " to " + registration.getPlugin().getPluginMeta().getDisplayName(),
+                ex
+            );
         }
     }
 
     /**
-     * Called from Rust (via j4rs) when a Pumpkin event fires for a specific plugin.
+     * Called from Rust through the JavaBridge upcall stub when a Pumpkin event fires for a
+     * priority band. Returns null when the event could not be created, which Rust reports
+     * and treats as unmodified.
+     */
+    @Override
+    public FireEventResponse fireEvent(@NotNull FireEventRequest request) {
+        Event event = PatchBukkitEventFactory.createEvent(request.getEvent());
+        if (event == null) return null;
+
+        if (request.getCancelled() && event instanceof Cancellable cancellable) {
+            cancellable.setCancelled(true);
+        }
+
+        Object[] before = PatchBukkitEventFactory.mutableFields(event);
+        this.fireEvent(event, request.getLane(), request.getPriority());
+        return PatchBukkitEventFactory.toFireEventResponse(event, before);
+    }
+
+    /**
+     * Runs the handlers in one priority band of every plugin on a JVM lane for a Pumpkin
+     * event, on that lane's thread.
+     *
+     * Looks up the compiled dispatcher of the lane and band in PatchBukkitEvent's
+     * HandlerList through the ListenerIndex, which calls the listeners in HandlerList
+     * order, so the whole band is handled in a single crossing from Rust. Cancellation
+     * state is set on the event and read back by Rust after this returns.
      *
-     * Iterates PatchBukkitEvent's HandlerList, filters to the target plugin
-     * by name, and invokes its executors. Cancellation state is set on the
-     * event and read back by Rust after this returns.
+     * Finding no listener means the interest table still has the band set, for
+     * example after a plugin unregistered its listeners straight from the
+     * HandlerList, so its slot is rewritten to stop Rust from calling again.
      *
-     * @param event      The PatchBukkitEvent populated by Rust
-     * @param pluginName The plugin whose handlers should execute
+     * @param event        The PatchBukkitEvent populated by Rust
+     * @param lane         The lane whose plugins' handlers should execute, see {@link PluginLanes}
+     * @param priorityBand The band whose handlers should execute, see {@link #priorityBand}
      */
-    public void fireEvent(@NotNull Event event, @NotNull String pluginName) {
-        for (RegisteredListener listener : event.getHandlers().getRegisteredListeners()) {
-            if (!listener.getPlugin().getName().equals(pluginName)) continue;
-            if (!listener.getPlugin().isEnabled()) continue;
-
-            try {
-                listener.callEvent(event);
-            } catch (Throwable ex) {
-                this.server.getLogger().log(
-                    Level.SEVERE,
-                    "Could not pass event " + event.getEventName()
-                        + " to " + listener.getPlugin().getPluginMeta().getDisplayName(),
-                    ex
-                );
-            }
+    public void fireEvent(@NotNull Event event, int lane, int priorityBand) {
+        boolean observed = this.listenerIndex.getDispatcher(event.getHandlers(), lane, priorityBand).dispatch(event);
+        if (!observed) {
+            ListenerInterest.update(event.getClass().getName(), event.getHandlers());
         }
     }
 
@@ -145,13 +285,13 @@ public class PatchBukkitEventManager {
         }
 
         for (Map.Entry<Class<? extends Event>, Set<RegisteredListener>> entry : this.createRegisteredListeners(listener, plugin).entrySet()) {
-            this.getEventListeners(this.getRegistrationClass(entry.getKey())).registerAll(entry.getValue());
+            HandlerList handlers = this.getEventListeners(entry.getKey());
+            handlers.registerAll(entry.getValue());
 
             for (RegisteredListener rl : entry.getValue()) {
-                int priorityOrdinal = Math.min(rl.getPriority().ordinal(), 4);
-                var request = RegisterEventRequest.newBuilder().setEventType(entry.getKey().getName()).setPluginName(plugin.getName()).setPriority(priorityOrdinal).setBlocking(true).build();
-                NativeBridgeFfi.registerEvent(request);
+                this.registerBand(entry.getKey(), rl.getPriority(), plugin);
             }
+            this.observe(entry.getKey(), handlers);
         }
     }
 
@@ -165,27 +305,59 @@ public class PatchBukkitEventManager {
         }
 
         executor = new TimedEventExecutor(executor, plugin, null, event);
-        this.getEventListeners(event).register(new RegisteredListener(listener, executor, priority, plugin, ignoreCancelled));
+        HandlerList handlers = this.getEventListeners(event);
+        handlers.register(new RegisteredListener(listener, executor, priority, plugin, ignoreCancelled));
+
+        this.registerBand(event, priority, plugin);
+        this.observe(event, handlers);
+    }
+
+    /**
+     * Asks Rust for the Pumpkin handler of the event type, priority band and the plugin's
+     * JVM lane, once per combination. The handler runs the listeners in the band of every
+     * plugin on the lane, so later registrations need no new handler. Only the MONITOR band
+     * is registered as non-blocking.
+     */
+    private void registerBand(@NotNull Class<? extends Event> event, @NotNull EventPriority priority, @NotNull Plugin plugin) {
+        int band = priorityBand(priority);
+        int lane = PluginLanes.of(plugin);
+        if (!this.registeredBands.add(event.getName() + '#' + band + '@' + lane)) return;
 
-        int priorityOrdinal = Math.min(priority.ordinal(), 4);
-        var request = RegisterEventRequest.newBuilder().setEventType(event.getName()).setPluginName(plugin.getName()).setPriority(priorityOrdinal).setBlocking(true).build();
+        var request = RegisterEventRequest.newBuilder().setEventType(event.getName()).setPluginName(plugin.getName()).setPriority(band).setBlocking(band != MONITOR_BAND).setLane(lane).build();
         NativeBridgeFfi.registerEvent(request);
+    }
 
+    /**
+     * Remembers the HandlerList of an event type with listeners and publishes its bands to
+     * the interest table, so Rust starts sending the event.
+     */
+    private void observe(@NotNull Class<? extends Event> event, @NotNull HandlerList handlers) {
+        this.observedHandlers.put(event.getName(), handlers);
+        ListenerInterest.update(event.getName(), handlers);
+    }
+
+    /**
+     * Rewrites the interest table for every event type that ever had listeners and drops
+     * the listener index entries that went stale. Called when listeners are unregistered or
+     * a plugin is enabled or disabled, since either can change which bands have a listener
+     * of an enabled plugin.
+     */
+    public void refreshInterest() {
+        this.listenerIndex.prune();
+        this.observedHandlers.forEach(ListenerInterest::update);
+    }
+
+    static int priorityBand(@NotNull EventPriority priority) {
+        return Math.min(priority.ordinal(), PRIORITY_BANDS - 1);
     }
 
     @NotNull
     private HandlerList getEventListeners(@NotNull Class<? extends Event> type) {
-        try {
-            Method method = this.getRegistrationClass(type).getDeclaredMethod("getHandlerList");
-            method.setAccessible(true);
-            return (HandlerList) method.invoke(null);
-        } catch (Exception e) {
-            throw new IllegalPluginAccessException(e.toString());
-        }
+        return HANDLER_LISTS.get(type);
     }
 
     @NotNull
-    private Class<? extends Event> getRegistrationClass(@NotNull Class<? extends Event> clazz) {
+    private static Class<? extends Event> findRegistrationClass(@NotNull Class<? extends Event> clazz) {
         try {
             clazz.getDeclaredMethod("getHandlerList");
             return clazz;
@@ -193,7 +365,7 @@ public class PatchBukkitEventManager {
             if (clazz.getSuperclass() != null
                 && !clazz.getSuperclass().equals(Event.class)
                 && Event.class.isAssignableFrom(clazz.getSuperclass())) {
-                return this.getRegistrationClass(clazz.getSuperclass().asSubclass(Event.class));
+                return findRegistrationClass(clazz.getSuperclass().asSubclass(Event.class));
             } else {
                 throw new IllegalPluginAccessException("Unable to find handler list for event " + clazz.getName() + ". Static getHandlerList method required!");
             }
@@ -256,12 +428,15 @@ public class PatchBukkitEventManager {
             }
 
             EventExecutor executor = new TimedEventExecutor(EventExecutor.create(method, eventClass), plugin, method, eventClass);
-            eventSet.add(new RegisteredListener(listener, executor, eh.priority(), plugin, eh.ignoreCancelled()));
+            RegisteredListener registeredListener = new RegisteredListener(listener, executor, eh.priority(), plugin, eh.ignoreCancelled());
+            this.dispatchCompiler.registerMethod(registeredListener, method);
+            eventSet.add(registeredListener);
         }
         return ret;
     }
 
     public void clearEvents() {
         HandlerList.unregisterAll();
+        this.refreshInterest();
     }
 }
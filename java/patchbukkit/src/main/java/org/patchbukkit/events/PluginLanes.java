@@ -0,0 +1,31 @@
+package org.patchbukkit.events;
+
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The JVM lane every plugin is pinned to, see rust/src/java/jvm/lanes.rs.
+ *
+ * Rust runs each lane on a thread of its own and registers one Pumpkin handler per event
+ * type, priority band and lane, so the listeners of a band are split by lane and a plugin's
+ * listeners only ever run on its lane. Plugins nobody assigned, such as those of the JMH
+ * benchmarks, are on lane 0. The event replay assigns the lanes its capture recorded.
+ */
+public final class PluginLanes {
+    private static final Map<String, Integer> LANES = new ConcurrentHashMap<>();
+
+    private PluginLanes() {
+    }
+
+    /** Called from Rust once the plugin is instantiated, before it is enabled. */
+    public static void assign(@NotNull String pluginName, int lane) {
+        LANES.put(pluginName, lane);
+    }
+
+    public static int of(@NotNull Plugin plugin) {
+        return LANES.getOrDefault(plugin.getName(), 0);
+    }
+}
@@ -28,6 +28,8 @@ import org.bukkit.util.Vector;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jspecify.annotations.NonNull;
+import org.patchbukkit.bridge.BridgeUtils;
+import patchbukkit.bridge.NativeBridgeFfi;
 
 public class PatchBukkitWorld
     extends PatchBukkitRegionAccessor
@@ -491,10 +493,29 @@ public class PatchBukkitWorld
 
     @Override
     public @NotNull List<Player> getPlayers() {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException(
-            "Unimplemented method 'getPlayers'"
-        );
+        var online = new ArrayList<Player>(Bukkit.getOnlinePlayers());
+        if (online.isEmpty()) {
+            return List.of();
+        }
+        var requests = new ArrayList<patchbukkit.common.UUID>(online.size());
+        for (Player player : online) {
+            requests.add(BridgeUtils.convertUuid(player.getUniqueId()));
+        }
+
+        // One crossing for every online player instead of one getLocation() each
+        var locations = NativeBridgeFfi.batchGetLocation(requests);
+        if (locations == null) {
+            return List.of();
+        }
+
+        var players = new ArrayList<Player>();
+        for (int i = 0; i < online.size(); i++) {
+            var location = locations.get(i);
+            if (location != null && this.uuid.equals(BridgeUtils.convertUuid(location.getWorld().getUuid()))) {
+                players.add(online.get(i));
+            }
+        }
+        return players;
     }
 
     @Override
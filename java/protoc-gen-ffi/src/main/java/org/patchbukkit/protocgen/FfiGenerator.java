@@ -1,6 +1,7 @@
 package org.patchbukkit.protocgen;
 
 import com.google.protobuf.DescriptorProtos.*;
+import com.google.protobuf.UnknownFieldSet;
 import com.google.protobuf.compiler.PluginProtos.*;
 
 import java.io.IOException;
@@ -10,14 +11,46 @@ public class FfiGenerator {
 
     private static final Map<String, String> typeMap = new HashMap<>();
 
+    /** Field number of {@code patchbukkit.ffi.batch} in {@code patchbukkit/ffi/options.proto}. */
+    private static final int BATCH_OPTION = 50001;
+
+    /** Field number of {@code patchbukkit.ffi.submission_ring} in {@code patchbukkit/ffi/options.proto}. */
+    private static final int SUBMISSION_RING_OPTION = 50003;
+
+    /** Field number of {@code patchbukkit.ffi.critical} in {@code patchbukkit/ffi/options.proto}. */
+    private static final int CRITICAL_OPTION = 50004;
+
+    /** Field number of {@code patchbukkit.ffi.upcall} in {@code patchbukkit/ffi/options.proto}. */
+    private static final int UPCALL_OPTION = 50005;
+
+    /** Field number of {@code patchbukkit.ffi.fixed_layout} in {@code patchbukkit/ffi/options.proto}. */
+    private static final int FIXED_LAYOUT_OPTION = 50002;
+
+    private static final String EMPTY_TYPE = ".google.protobuf.Empty";
+
+    private static final Map<String, DescriptorProto> fixedMessages = new HashMap<>();
+    private static final Map<String, FixedLayout> fixedLayouts = new HashMap<>();
+    private static final Set<String> resolvingLayouts = new HashSet<>();
+
+    /**
+     * When set (plugin parameter {@code pooled}), generated stubs encode requests into a
+     * reused native scratch buffer instead of allocating a fresh arena and byte array for
+     * every call. Platform threads keep one each, virtual threads borrow one from a bounded
+     * shared pool.
+     */
+    private static boolean pooled;
+
     public static void main(String[] args) throws IOException {
         CodeGeneratorRequest request = CodeGeneratorRequest.parseFrom(System.in);
         CodeGeneratorResponse.Builder response = CodeGeneratorResponse.newBuilder();
         response.setSupportedFeatures(CodeGeneratorResponse.Feature.FEATURE_PROTO3_OPTIONAL_VALUE);
 
+        parseParameters(request.getParameter());
+
         // Build type map from all proto files
         for (FileDescriptorProto file : request.getProtoFileList()) {
             buildTypeMap(file);
+            collectFixedMessages(file);
         }
 
         // Generate FFI classes for services
@@ -30,7 +63,9 @@ public class FfiGenerator {
 
             for (ServiceDescriptorProto service : file.getServiceList()) {
                 String className = service.getName() + "Ffi";
-                String content = generateFfiClass(service, javaPackage);
+                String content = hasBoolOption(service.getOptions().getUnknownFields(), UPCALL_OPTION)
+                    ? generateUpcallClass(service, javaPackage)
+                    : generateFfiClass(service, javaPackage);
                 String fileName = javaPackage.replace('.', '/') + "/" + className + ".java";
 
                 response.addFile(CodeGeneratorResponse.File.newBuilder()
@@ -43,6 +78,16 @@ public class FfiGenerator {
         response.build().writeTo(System.out);
     }
 
+    private static void parseParameters(String parameter) {
+        for (String option : parameter.split(",")) {
+            switch (option.trim()) {
+                case "pooled" -> pooled = true;
+                case "" -> { }
+                default -> throw new IllegalArgumentException("Unknown protoc-gen-ffi option: " + option);
+            }
+        }
+    }
+
     private static void buildTypeMap(FileDescriptorProto file) {
         String protoPackage = file.getPackage();
         String javaPackage = getJavaPackage(file);
@@ -79,6 +124,44 @@ public class FfiGenerator {
         }
     }
 
+    private static void collectFixedMessages(FileDescriptorProto file) {
+        for (DescriptorProto message : file.getMessageTypeList()) {
+            if (hasBoolOption(message.getOptions().getUnknownFields(), FIXED_LAYOUT_OPTION)) {
+                fixedMessages.put("." + file.getPackage() + "." + message.getName(), message);
+            }
+            rejectNestedFixedMessages(message);
+        }
+    }
+
+    private static void rejectNestedFixedMessages(DescriptorProto parent) {
+        for (DescriptorProto nested : parent.getNestedTypeList()) {
+            if (hasBoolOption(nested.getOptions().getUnknownFields(), FIXED_LAYOUT_OPTION)) {
+                throw new IllegalArgumentException(
+                    "fixed_layout is only supported on top-level messages: " + parent.getName() + "." + nested.getName());
+            }
+            rejectNestedFixedMessages(nested);
+        }
+    }
+
+    /** Layout of a fixed_layout message, or null when the message is passed as protobuf bytes. */
+    private static FixedLayout fixedLayout(String protoType) {
+        DescriptorProto message = fixedMessages.get(protoType);
+        if (message == null) {
+            return null;
+        }
+
+        FixedLayout layout = fixedLayouts.get(protoType);
+        if (layout == null) {
+            if (!resolvingLayouts.add(protoType)) {
+                throw new IllegalArgumentException("fixed_layout message " + protoType + " contains itself");
+            }
+            layout = FixedLayout.of(protoType, message, FfiGenerator::fixedLayout);
+            resolvingLayouts.remove(protoType);
+            fixedLayouts.put(protoType, layout);
+        }
+        return layout;
+    }
+
     private static String getJavaPackage(FileDescriptorProto file) {
         return file.getOptions().hasJavaPackage()
             ? file.getOptions().getJavaPackage()
@@ -101,12 +184,49 @@ public class FfiGenerator {
         StringBuilder sb = new StringBuilder();
         String className = service.getName() + "Ffi";
         List<MethodDescriptorProto> methods = service.getMethodList();
+        List<MethodDescriptorProto> batchMethods = hasBoolOption(service.getOptions().getUnknownFields(), BATCH_OPTION)
+            ? methods
+            : List.of();
+
+        List<MethodDescriptorProto> asyncMethods = new ArrayList<>();
+        if (hasBoolOption(service.getOptions().getUnknownFields(), SUBMISSION_RING_OPTION)) {
+            for (MethodDescriptorProto method : methods) {
+                if (method.getOutputType().equals(EMPTY_TYPE)) {
+                    asyncMethods.add(method);
+                }
+            }
+        }
+
+        // Nested layouts come first so every layout constant is initialized before it is embedded
+        Map<String, FixedLayout> layouts = new LinkedHashMap<>();
+        for (MethodDescriptorProto method : methods) {
+            collectLayouts(fixedLayout(method.getInputType()), layouts);
+            collectLayouts(fixedLayout(method.getOutputType()), layouts);
+        }
+        long structCapacity = 0;
+        for (FixedLayout layout : layouts.values()) {
+            structCapacity = Math.max(structCapacity, layout.size);
+        }
 
         // Package and imports
         sb.append("package ").append(javaPackage).append(";\n\n");
         sb.append("import java.lang.foreign.*;\n");
         sb.append("import java.lang.invoke.MethodHandle;\n");
-        sb.append("import com.google.protobuf.InvalidProtocolBufferException;\n\n");
+        sb.append("import java.lang.invoke.VarHandle;\n");
+        sb.append("import java.nio.ByteBuffer;\n");
+        sb.append("import java.util.ArrayList;\n");
+        sb.append("import java.util.List;\n");
+        if (pooled) {
+            sb.append("import java.util.concurrent.ConcurrentLinkedDeque;\n");
+            sb.append("import java.util.concurrent.atomic.AtomicInteger;\n");
+        }
+        sb.append("import java.io.IOException;\n");
+        sb.append("import com.google.protobuf.CodedInputStream;\n");
+        sb.append("import com.google.protobuf.CodedOutputStream;\n");
+        sb.append("import com.google.protobuf.ExtensionRegistryLite;\n");
+        sb.append("import com.google.protobuf.InvalidProtocolBufferException;\n");
+        sb.append("import com.google.protobuf.MessageLite;\n");
+        sb.append("import com.google.protobuf.Parser;\n\n");
 
         // Class
         sb.append("public class ").append(className).append(" {\n\n");
@@ -116,42 +236,255 @@ public class FfiGenerator {
         for (MethodDescriptorProto method : methods) {
             sb.append("    private static MethodHandle ").append(toHandleName(method)).append(";\n");
         }
+        for (MethodDescriptorProto method : batchMethods) {
+            sb.append("    private static MethodHandle ").append(toBatchHandleName(method)).append(";\n");
+        }
+        if (pooled) {
+            sb.append("    private static final ThreadLocal<CallBuffer> CALL_BUFFERS = ThreadLocal.withInitial(() -> new CallBuffer(false));\n");
+        }
+        if (!asyncMethods.isEmpty()) {
+            sb.append("    private static volatile SubmissionRing submissionRing;\n");
+        }
         sb.append("\n");
 
+        for (MethodDescriptorProto method : asyncMethods) {
+            sb.append("    private static final int ").append(toSubmissionIdName(method)).append(" = ");
+            sb.append(methods.indexOf(method)).append(";\n");
+        }
+        if (!asyncMethods.isEmpty()) {
+            sb.append("\n");
+        }
+
+        for (FixedLayout layout : layouts.values()) {
+            generateLayoutConstant(sb, layout);
+        }
+
+        if (pooled) {
+            generateCallBufferClass(sb, structCapacity);
+        } else {
+            // Responses that do not fit are spilled into a Rust buffer, see generateResponseHelpers
+            sb.append("    private static final int UNPOOLED_OUTPUT_CAPACITY = 512;\n\n");
+        }
+
         // Init methods
-        generateInitMethod(sb, methods);
+        generateInitMethod(sb, methods, batchMethods);
         generateInitFreeMethod(sb);
+        if (!asyncMethods.isEmpty()) {
+            generateSubmissionRing(sb);
+        }
 
         // Service methods
         for (MethodDescriptorProto method : methods) {
             generateServiceMethod(sb, method);
         }
+        for (MethodDescriptorProto method : batchMethods) {
+            generateBatchMethod(sb, method);
+        }
+        for (MethodDescriptorProto method : asyncMethods) {
+            generateAsyncMethod(sb, method);
+        }
+        generateResponseHelpers(sb);
+        if (!batchMethods.isEmpty()) {
+            generateBatchHelpers(sb);
+        }
+        for (FixedLayout layout : layouts.values()) {
+            generateStructAccessors(sb, layout);
+        }
 
         sb.append("}\n");
         return sb.toString();
     }
 
-    private static void generateInitMethod(StringBuilder sb, List<MethodDescriptorProto> methods) {
+    /**
+     * Upcall services run the other way around: Rust calls into Java. The generated class
+     * holds a Handler interface with one method per rpc and one upcall stub per method, with
+     * the same (pointer, length, out length) shape as the downcalls. Responses are encoded into
+     * a per-thread native buffer that stays valid until the next upcall on that thread, which
+     * is enough since Rust decodes them right after the stub returns.
+     */
+    private static String generateUpcallClass(ServiceDescriptorProto service, String javaPackage) {
+        StringBuilder sb = new StringBuilder();
+        String className = service.getName() + "Ffi";
+        List<MethodDescriptorProto> methods = service.getMethodList();
+
+        sb.append("package ").append(javaPackage).append(";\n\n");
+        sb.append("import java.lang.foreign.*;\n");
+        sb.append("import java.lang.invoke.MethodHandles;\n");
+        sb.append("import java.lang.invoke.MethodType;\n");
+        sb.append("import java.nio.ByteBuffer;\n");
+        sb.append("import java.util.logging.Level;\n");
+        sb.append("import java.util.logging.Logger;\n");
+        sb.append("import com.google.protobuf.CodedInputStream;\n");
+        sb.append("import com.google.protobuf.CodedOutputStream;\n");
+        sb.append("import com.google.protobuf.MessageLite;\n\n");
+
+        sb.append("public class ").append(className).append(" {\n\n");
+        sb.append("    private static final Linker LINKER = Linker.nativeLinker();\n");
+        sb.append("    private static final Logger LOGGER = Logger.getLogger(\"").append(className).append("\");\n");
+        sb.append("    private static final FunctionDescriptor UPCALL_DESCRIPTOR = FunctionDescriptor.of(\n");
+        sb.append("        ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.ADDRESS);\n");
+        sb.append("    private static final MethodType UPCALL_TYPE = MethodType.methodType(\n");
+        sb.append("        MemorySegment.class, MemorySegment.class, long.class, MemorySegment.class);\n");
+        // Upcalls run on the Rust threads calling them, platform threads that live as long as
+        // the server, so one buffer per thread stays bounded
+        sb.append("    private static final ThreadLocal<UpcallBuffer> UPCALL_BUFFERS = ThreadLocal.withInitial(UpcallBuffer::new);\n");
+        sb.append("    private static volatile Handler handler;\n\n");
+
+        sb.append("    /** Java side of {@code ").append(service.getName()).append("}. Returning null answers Rust with no response. */\n");
+        sb.append("    public interface Handler {\n");
+        for (MethodDescriptorProto method : methods) {
+            sb.append("        ").append(resolveJavaType(method.getOutputType())).append(" ");
+            sb.append(toCamelCase(method.getName())).append("(").append(resolveJavaType(method.getInputType()));
+            sb.append(" request);\n");
+        }
+        sb.append("    }\n\n");
+
+        sb.append("    public static void register(Handler handler) {\n");
+        sb.append("        ").append(className).append(".handler = handler;\n");
+        sb.append("    }\n\n");
+
+        sb.append("    /** Creates the upcall stubs, in method order. Rust calls this once while initializing. */\n");
+        sb.append("    public static long[] upcallAddresses() {\n");
+        sb.append("        try {\n");
+        sb.append("            MethodHandles.Lookup lookup = MethodHandles.lookup();\n");
+        sb.append("            return new long[] {\n");
+        for (MethodDescriptorProto method : methods) {
+            sb.append("                LINKER.upcallStub(lookup.findStatic(").append(className).append(".class, \"");
+            sb.append(toUpcallMethodName(method)).append("\", UPCALL_TYPE), UPCALL_DESCRIPTOR, Arena.global()).address(),\n");
+        }
+        sb.append("            };\n");
+        sb.append("        } catch (ReflectiveOperationException e) {\n");
+        sb.append("            throw new IllegalStateException(\"Failed to create upcall stubs\", e);\n");
+        sb.append("        }\n");
+        sb.append("    }\n\n");
+
+        for (MethodDescriptorProto method : methods) {
+            generateUpcallMethod(sb, method);
+        }
+
+        sb.append("    /** Per-thread native buffer the responses are encoded into, it only grows. */\n");
+        sb.append("    private static final class UpcallBuffer {\n");
+        sb.append("        private static final long INITIAL_CAPACITY = 1024;\n\n");
+        sb.append("        private MemorySegment output = Arena.ofAuto().allocate(INITIAL_CAPACITY, Long.BYTES);\n");
+        sb.append("        private ByteBuffer outputView = this.output.asByteBuffer();\n\n");
+        sb.append("        MemorySegment encode(MessageLite message, MemorySegment outputLen) throws java.io.IOException {\n");
+        sb.append("            int size = message.getSerializedSize();\n");
+        sb.append("            if (this.output.byteSize() < size) {\n");
+        sb.append("                long capacity = Math.max(INITIAL_CAPACITY, Long.highestOneBit(size) << 1);\n");
+        sb.append("                this.output = Arena.ofAuto().allocate(capacity, Long.BYTES);\n");
+        sb.append("                this.outputView = this.output.asByteBuffer();\n");
+        sb.append("            }\n");
+        sb.append("            CodedOutputStream output = CodedOutputStream.newInstance(this.outputView.clear());\n");
+        sb.append("            message.writeTo(output);\n");
+        sb.append("            output.flush();\n");
+        sb.append("            outputLen.reinterpret(Long.BYTES).set(ValueLayout.JAVA_LONG, 0, size);\n");
+        sb.append("            return this.output;\n");
+        sb.append("        }\n");
+        sb.append("    }\n");
+
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static void generateUpcallMethod(StringBuilder sb, MethodDescriptorProto method) {
+        String inputType = resolveJavaType(method.getInputType());
+        String outputType = resolveJavaType(method.getOutputType());
+
+        sb.append("    private static MemorySegment ").append(toUpcallMethodName(method));
+        sb.append("(MemorySegment input, long inputLen, MemorySegment outputLen) {\n");
+        // An exception escaping an upcall stub takes down the whole JVM, so everything is caught
+        sb.append("        try {\n");
+        sb.append("            Handler current = handler;\n");
+        sb.append("            if (current == null) return MemorySegment.NULL;\n\n");
+        sb.append("            ").append(inputType).append(" request = ").append(inputType);
+        sb.append(".parseFrom(CodedInputStream.newInstance(input.reinterpret(inputLen).asByteBuffer()));\n");
+        sb.append("            ").append(outputType).append(" response = current.").append(toCamelCase(method.getName()));
+        sb.append("(request);\n");
+        sb.append("            if (response == null) return MemorySegment.NULL;\n\n");
+        sb.append("            return UPCALL_BUFFERS.get().encode(response, outputLen);\n");
+        sb.append("        } catch (Throwable t) {\n");
+        sb.append("            LOGGER.log(Level.SEVERE, \"Upcall ").append(method.getName()).append(" failed\", t);\n");
+        sb.append("            return MemorySegment.NULL;\n");
+        sb.append("        }\n");
+        sb.append("    }\n\n");
+    }
+
+    private static void generateInitMethod(
+        StringBuilder sb,
+        List<MethodDescriptorProto> methods,
+        List<MethodDescriptorProto> batchMethods
+    ) {
         sb.append("    public static void init(");
 
+        // Rust passes the plain entry points first, followed by the batch entry points
         StringJoiner params = new StringJoiner(", ");
         for (MethodDescriptorProto method : methods) {
             params.add("long " + toCamelCase(method.getName()) + "Addr");
         }
+        for (MethodDescriptorProto method : batchMethods) {
+            params.add("long " + toBatchMethodName(method) + "Addr");
+        }
         sb.append(params).append(") {\n");
 
         for (MethodDescriptorProto method : methods) {
-            String handleName = toHandleName(method);
-            String addrName = toCamelCase(method.getName()) + "Addr";
-
-            sb.append("        ").append(handleName).append(" = LINKER.downcallHandle(\n");
-            sb.append("            MemorySegment.ofAddress(").append(addrName).append("),\n");
-            sb.append("            FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.ADDRESS, ");
-            sb.append("ValueLayout.JAVA_LONG, ValueLayout.ADDRESS));\n");
+            generateDowncallHandle(sb, toHandleName(method), toCamelCase(method.getName()) + "Addr",
+                functionDescriptor(method), isCritical(method));
+        }
+        // Batch calls run for as long as their request list is long, so they are never critical
+        for (MethodDescriptorProto method : batchMethods) {
+            generateDowncallHandle(sb, toBatchHandleName(method), toBatchMethodName(method) + "Addr",
+                BYTES_DESCRIPTOR, false);
         }
         sb.append("    }\n\n");
     }
 
+    private static final String BYTES_DESCRIPTOR = "FunctionDescriptor.of(ValueLayout.JAVA_LONG, "
+        + "ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG)";
+
+    /**
+     * Protobuf arguments are passed as (pointer, length) and protobuf results are written into
+     * a Java-owned (pointer, capacity) output buffer, see {@code readResponse} for the returned
+     * length. Fixed-layout arguments are passed as a pointer to the struct instead, and
+     * fixed-layout results are written into a Java-owned struct with a boolean return telling
+     * whether there was a result.
+     */
+    private static String functionDescriptor(MethodDescriptorProto method) {
+        boolean inputFixed = fixedLayout(method.getInputType()) != null;
+        boolean outputFixed = fixedLayout(method.getOutputType()) != null;
+        if (!inputFixed && !outputFixed) {
+            return BYTES_DESCRIPTOR;
+        }
+
+        StringJoiner layouts = new StringJoiner(", ", "FunctionDescriptor.of(", ")");
+        layouts.add(outputFixed ? "ValueLayout.JAVA_BOOLEAN" : "ValueLayout.JAVA_LONG");
+        layouts.add("ValueLayout.ADDRESS");
+        if (!inputFixed) {
+            layouts.add("ValueLayout.JAVA_LONG");
+        }
+        layouts.add("ValueLayout.ADDRESS");
+        if (!outputFixed) {
+            layouts.add("ValueLayout.JAVA_LONG");
+        }
+        return layouts.toString();
+    }
+
+    private static void generateDowncallHandle(
+        StringBuilder sb,
+        String handleName,
+        String addrName,
+        String descriptor,
+        boolean critical
+    ) {
+        sb.append("        ").append(handleName).append(" = LINKER.downcallHandle(\n");
+        sb.append("            MemorySegment.ofAddress(").append(addrName).append("),\n");
+        sb.append("            ").append(descriptor);
+        if (critical) {
+            // Heap access lets the unpooled stubs hand Rust the request array without a native copy
+            sb.append(",\n            Linker.Option.critical(true)");
+        }
+        sb.append(");\n");
+    }
+
     private static void generateInitFreeMethod(StringBuilder sb) {
         sb.append("    public static void initFree(long freeAddr) {\n");
         sb.append("        freeNative = LINKER.downcallHandle(\n");
@@ -160,40 +493,519 @@ public class FfiGenerator {
         sb.append("    }\n\n");
     }
 
+    private static void generateCallBufferClass(StringBuilder sb, long structCapacity) {
+        sb.append("    /**\n");
+        sb.append("     * Native scratch space reused across bridge calls. The request and response segments only\n");
+        sb.append("     * grow; a replaced segment is released by the GC once it becomes unreachable.\n");
+        sb.append("     *\n");
+        sb.append("     * Platform threads keep a buffer each. Virtual threads come and go with every task, so\n");
+        sb.append("     * they borrow one from a shared pool for the call instead. The pool keeps at most\n");
+        sb.append("     * SHARED_CAPACITY buffers, more are only allocated while that many calls run at once.\n");
+        sb.append("     */\n");
+        sb.append("    private static final class CallBuffer {\n");
+        sb.append("        private static final long INITIAL_CAPACITY = 1024;\n");
+        sb.append("        private static final int SHARED_CAPACITY = 64;\n");
+        sb.append("        private static final ConcurrentLinkedDeque<CallBuffer> SHARED = new ConcurrentLinkedDeque<>();\n");
+        sb.append("        private static final AtomicInteger SHARED_SIZE = new AtomicInteger();\n\n");
+        sb.append("        private final boolean shared;\n");
+        sb.append("        private MemorySegment input = Arena.ofAuto().allocate(INITIAL_CAPACITY, Long.BYTES);\n");
+        sb.append("        private ByteBuffer inputView = this.input.asByteBuffer();\n");
+        sb.append("        private MemorySegment output = Arena.ofAuto().allocate(INITIAL_CAPACITY, Long.BYTES);\n\n");
+        if (structCapacity > 0) {
+            sb.append("        private static final long STRUCT_CAPACITY = ").append(structCapacity).append(";\n\n");
+            sb.append("        private final MemorySegment inputStruct = Arena.ofAuto().allocate(STRUCT_CAPACITY, Long.BYTES);\n");
+            sb.append("        private final MemorySegment outputStruct = Arena.ofAuto().allocate(STRUCT_CAPACITY, Long.BYTES);\n\n");
+        }
+
+        sb.append("        private CallBuffer(boolean shared) {\n");
+        sb.append("            this.shared = shared;\n");
+        sb.append("        }\n\n");
+
+        sb.append("        static CallBuffer acquire() {\n");
+        sb.append("            if (!Thread.currentThread().isVirtual()) return CALL_BUFFERS.get();\n\n");
+        sb.append("            CallBuffer buffer = SHARED.pollFirst();\n");
+        sb.append("            if (buffer == null) return new CallBuffer(true);\n");
+        sb.append("            SHARED_SIZE.decrementAndGet();\n");
+        sb.append("            return buffer;\n");
+        sb.append("        }\n\n");
+
+        sb.append("        /** Hands a borrowed buffer back to the pool once the call is done with it. */\n");
+        sb.append("        void release() {\n");
+        sb.append("            if (!this.shared) return;\n");
+        sb.append("            if (SHARED_SIZE.incrementAndGet() <= SHARED_CAPACITY) {\n");
+        sb.append("                SHARED.offerFirst(this);\n");
+        sb.append("            } else {\n");
+        sb.append("                SHARED_SIZE.decrementAndGet();\n");
+        sb.append("            }\n");
+        sb.append("        }\n\n");
+
+        sb.append("        MemorySegment encode(MessageLite message, int size) throws java.io.IOException {\n");
+        sb.append("            CodedOutputStream output = this.open(size);\n");
+        sb.append("            message.writeTo(output);\n");
+        sb.append("            output.flush();\n");
+        sb.append("            return this.input;\n");
+        sb.append("        }\n\n");
+
+        sb.append("        MemorySegment encodeBatch(List<? extends MessageLite> messages, int size) throws java.io.IOException {\n");
+        sb.append("            CodedOutputStream output = this.open(size);\n");
+        sb.append("            writeBatch(output, messages);\n");
+        sb.append("            output.flush();\n");
+        sb.append("            return this.input;\n");
+        sb.append("        }\n\n");
+
+        sb.append("        /** Grows the response segment after a response did not fit, so the next one does. */\n");
+        sb.append("        void fitOutput(long resultLen) {\n");
+        sb.append("            if (this.output.byteSize() < resultLen) {\n");
+        sb.append("                this.output = Arena.ofAuto().allocate(Long.highestOneBit(resultLen) << 1, Long.BYTES);\n");
+        sb.append("            }\n");
+        sb.append("        }\n\n");
+
+        sb.append("        private CodedOutputStream open(int size) {\n");
+        sb.append("            if (this.input.byteSize() < size) {\n");
+        sb.append("                long capacity = Math.max(INITIAL_CAPACITY, Long.highestOneBit(size) << 1);\n");
+        sb.append("                this.input = Arena.ofAuto().allocate(capacity, Long.BYTES);\n");
+        sb.append("                this.inputView = this.input.asByteBuffer();\n");
+        sb.append("            }\n");
+        sb.append("            return CodedOutputStream.newInstance(this.inputView.clear());\n");
+        sb.append("        }\n");
+        sb.append("    }\n\n");
+    }
+
     private static void generateServiceMethod(StringBuilder sb, MethodDescriptorProto method) {
         String methodName = toCamelCase(method.getName());
         String inputType = resolveJavaType(method.getInputType());
         String outputType = resolveJavaType(method.getOutputType());
+        FixedLayout inputLayout = fixedLayout(method.getInputType());
+        FixedLayout outputLayout = fixedLayout(method.getOutputType());
 
         sb.append("    public static ").append(outputType).append(" ").append(methodName);
         sb.append("(").append(inputType).append(" request) {\n");
-        sb.append("        try (Arena arena = Arena.ofConfined()) {\n");
-        sb.append("            byte[] inputBytes = request.toByteArray();\n");
-        sb.append("            MemorySegment inputSegment = arena.allocate(inputBytes.length);\n");
-        sb.append("            inputSegment.copyFrom(MemorySegment.ofArray(inputBytes));\n");
-        sb.append("            MemorySegment outputLenSegment = arena.allocate(ValueLayout.JAVA_LONG);\n\n");
 
-        sb.append("            MemorySegment resultPtr = (MemorySegment) ").append(toHandleName(method));
-        sb.append(".invokeExact(inputSegment, (long) inputBytes.length, outputLenSegment);\n\n");
+        String inputArgs;
+        if (pooled) {
+            sb.append("        CallBuffer buffer = CallBuffer.acquire();\n");
+            sb.append("        try {\n");
+            if (inputLayout != null) {
+                sb.append("            MemorySegment inputSegment = buffer.inputStruct;\n");
+                sb.append("            write").append(inputLayout.simpleName).append("(inputSegment, 0, request);\n");
+                inputArgs = "inputSegment";
+            } else {
+                sb.append("            int inputLen = request.getSerializedSize();\n");
+                sb.append("            MemorySegment inputSegment = buffer.encode(request, inputLen);\n");
+                inputArgs = "inputSegment, (long) inputLen";
+            }
+            sb.append(outputLayout != null
+                ? "            MemorySegment outputSegment = buffer.outputStruct;\n\n"
+                : "            MemorySegment outputSegment = buffer.output;\n\n");
+        } else if (isCritical(method)) {
+            // Critical calls may take heap segments: long[] backing keeps the struct and length
+            // slots 8-byte aligned, and the request array is passed as is
+            sb.append("        try {\n");
+            if (inputLayout != null) {
+                sb.append("            MemorySegment inputSegment = MemorySegment.ofArray(new long[");
+                sb.append(toLongSlots(inputLayout)).append("]);\n");
+                sb.append("            write").append(inputLayout.simpleName).append("(inputSegment, 0, request);\n");
+                inputArgs = "inputSegment";
+            } else {
+                sb.append("            byte[] inputBytes = request.toByteArray();\n");
+                sb.append("            MemorySegment inputSegment = MemorySegment.ofArray(inputBytes);\n");
+                inputArgs = "inputSegment, (long) inputBytes.length";
+            }
+            sb.append("            MemorySegment outputSegment = MemorySegment.ofArray(new long[");
+            sb.append(outputLayout != null ? String.valueOf(toLongSlots(outputLayout)) : "UNPOOLED_OUTPUT_CAPACITY / Long.BYTES");
+            sb.append("]);\n\n");
+        } else {
+            sb.append("        try (Arena arena = Arena.ofConfined()) {\n");
+            if (inputLayout != null) {
+                sb.append("            MemorySegment inputSegment = arena.allocate(").append(toLayoutName(inputLayout)).append(");\n");
+                sb.append("            write").append(inputLayout.simpleName).append("(inputSegment, 0, request);\n");
+                inputArgs = "inputSegment";
+            } else {
+                sb.append("            byte[] inputBytes = request.toByteArray();\n");
+                sb.append("            MemorySegment inputSegment = arena.allocate(inputBytes.length);\n");
+                sb.append("            inputSegment.copyFrom(MemorySegment.ofArray(inputBytes));\n");
+                inputArgs = "inputSegment, (long) inputBytes.length";
+            }
+            sb.append(outputLayout != null
+                ? "            MemorySegment outputSegment = arena.allocate(" + toLayoutName(outputLayout) + ");\n\n"
+                : "            MemorySegment outputSegment = arena.allocate(UNPOOLED_OUTPUT_CAPACITY, Long.BYTES);\n\n");
+        }
+
+        if (outputLayout != null) {
+            sb.append("            boolean found = (boolean) ").append(toHandleName(method));
+            sb.append(".invokeExact(").append(inputArgs).append(", outputSegment);\n");
+            sb.append("            return found ? read").append(outputLayout.simpleName).append("(outputSegment, 0) : null;\n");
+            sb.append("        } catch (Throwable t) {\n");
+            sb.append("            throw new RuntimeException(\"FFI call failed\", t);\n");
+            if (pooled) {
+                sb.append("        } finally {\n");
+                sb.append("            buffer.release();\n");
+            }
+            sb.append("        }\n");
+            sb.append("    }\n\n");
+            return;
+        }
+
+        sb.append("            long resultLen = (long) ").append(toHandleName(method));
+        sb.append(".invokeExact(").append(inputArgs).append(", outputSegment, outputSegment.byteSize());\n");
+
+        generateResponseDecode(sb, outputType, outputType + "::parseFrom");
+    }
+
+    private static void generateBatchMethod(StringBuilder sb, MethodDescriptorProto method) {
+        String inputType = resolveJavaType(method.getInputType());
+        String outputType = resolveJavaType(method.getOutputType());
+
+        sb.append("    /**\n");
+        sb.append("     * Runs {@link #").append(toCamelCase(method.getName())).append("} for every request in a single native call.\n");
+        sb.append("     * Entries of the returned list line up with {@code requests}; an entry is {@code null}\n");
+        sb.append("     * where the single call would have returned {@code null}.\n");
+        sb.append("     */\n");
+        sb.append("    public static List<").append(outputType).append("> ").append(toBatchMethodName(method));
+        sb.append("(List<").append(inputType).append("> requests) {\n");
+
+        if (pooled) {
+            sb.append("        CallBuffer buffer = CallBuffer.acquire();\n");
+            sb.append("        try {\n");
+            sb.append("            int inputLen = batchSize(requests);\n");
+            sb.append("            MemorySegment inputSegment = buffer.encodeBatch(requests, inputLen);\n");
+            sb.append("            MemorySegment outputSegment = buffer.output;\n\n");
+        } else {
+            sb.append("        try (Arena arena = Arena.ofConfined()) {\n");
+            sb.append("            int inputLen = batchSize(requests);\n");
+            sb.append("            MemorySegment inputSegment = arena.allocate(inputLen);\n");
+            sb.append("            CodedOutputStream output = CodedOutputStream.newInstance(inputSegment.asByteBuffer());\n");
+            sb.append("            writeBatch(output, requests);\n");
+            sb.append("            output.flush();\n");
+            sb.append("            MemorySegment outputSegment = arena.allocate(UNPOOLED_OUTPUT_CAPACITY, Long.BYTES);\n\n");
+        }
+
+        sb.append("            long resultLen = (long) ").append(toBatchHandleName(method));
+        sb.append(".invokeExact(inputSegment, (long) inputLen, outputSegment, outputSegment.byteSize());\n");
+
+        generateResponseDecode(sb, "List<" + outputType + ">", "input -> parseBatch(input, " + outputType + ".parser())");
+    }
+
+    private static void generateAsyncMethod(StringBuilder sb, MethodDescriptorProto method) {
+        String methodName = toCamelCase(method.getName());
+        String inputType = resolveJavaType(method.getInputType());
+
+        sb.append("    /**\n");
+        sb.append("     * Non-blocking variant of {@link #").append(methodName).append("}. The request is queued in the\n");
+        sb.append("     * submission ring and applied on the next drain, in submission order. When the ring is not\n");
+        sb.append("     * initialized or has no room this falls back to the blocking call, which may then overtake\n");
+        sb.append("     * requests that are still queued.\n");
+        sb.append("     */\n");
+        sb.append("    public static void ").append(methodName).append("Async(").append(inputType).append(" request) {\n");
+        sb.append("        SubmissionRing ring = submissionRing;\n");
+        sb.append("        try {\n");
+        sb.append("            if (ring != null && ring.submit(").append(toSubmissionIdName(method)).append(", request)) {\n");
+        sb.append("                return;\n");
+        sb.append("            }\n");
+        sb.append("        } catch (IOException e) {\n");
+        sb.append("            throw new RuntimeException(\"Failed to encode request\", e);\n");
+        sb.append("        }\n");
+        sb.append("        ").append(methodName).append("(request);\n");
+        sb.append("    }\n\n");
+    }
+
+    /**
+     * The ring lives in memory allocated by Rust (see rust/src/java/submission_ring.rs, which
+     * documents the record format). Producers only ever touch the tail and their own records,
+     * Rust only the head, so the generated code needs no locks.
+     */
+    private static void generateSubmissionRing(StringBuilder sb) {
+        sb.append("    public static void initSubmissionRing(long ringHandle, long memoryAddr, long capacity, long doorbellAddr) {\n");
+        sb.append("        MethodHandle doorbell = LINKER.downcallHandle(\n");
+        sb.append("            MemorySegment.ofAddress(doorbellAddr),\n");
+        sb.append("            FunctionDescriptor.ofVoid(ValueLayout.ADDRESS));\n");
+        sb.append("        submissionRing = new SubmissionRing(MemorySegment.ofAddress(ringHandle), MemorySegment.ofAddress(memoryAddr), capacity, doorbell);\n");
+        sb.append("    }\n\n");
+
+        sb.append("    /**\n");
+        sb.append("     * Multi-producer, single-consumer ring shared with Rust. A producer reserves space by\n");
+        sb.append("     * moving the tail with a CAS, writes its record and publishes it by storing the record\n");
+        sb.append("     * length last. Rust drains published records in order, zeroes them and moves the head.\n");
+        sb.append("     */\n");
+        sb.append("    private static final class SubmissionRing {\n");
+        sb.append("        private static final long HEAD_OFFSET = 0;\n");
+        sb.append("        private static final long TAIL_OFFSET = 64;\n");
+        sb.append("        private static final long DATA_OFFSET = 128;\n");
+        sb.append("        private static final int RECORD_HEADER = 8;\n");
+        sb.append("        private static final int SKIP_RECORD = -1;\n");
+        sb.append("        private static final VarHandle LONG = ValueLayout.JAVA_LONG.varHandle();\n");
+        sb.append("        private static final VarHandle INT = ValueLayout.JAVA_INT.varHandle();\n\n");
 
-        sb.append("            if (resultPtr.equals(MemorySegment.NULL)) return null;\n\n");
+        sb.append("        private final MemorySegment handle;\n");
+        sb.append("        private final MemorySegment control;\n");
+        sb.append("        private final MemorySegment data;\n");
+        sb.append("        private final long capacity;\n");
+        sb.append("        private final long mask;\n");
+        sb.append("        private final MethodHandle doorbell;\n\n");
 
-        sb.append("            long outputLen = outputLenSegment.get(ValueLayout.JAVA_LONG, 0);\n");
-        sb.append("            byte[] outputBytes = resultPtr.reinterpret(outputLen).toArray(ValueLayout.JAVA_BYTE);\n\n");
+        sb.append("        SubmissionRing(MemorySegment handle, MemorySegment memory, long capacity, MethodHandle doorbell) {\n");
+        sb.append("            MemorySegment ring = memory.reinterpret(DATA_OFFSET + capacity);\n");
+        sb.append("            this.handle = handle;\n");
+        sb.append("            this.control = ring.asSlice(0, DATA_OFFSET);\n");
+        sb.append("            this.data = ring.asSlice(DATA_OFFSET, capacity);\n");
+        sb.append("            this.capacity = capacity;\n");
+        sb.append("            this.mask = capacity - 1;\n");
+        sb.append("            this.doorbell = doorbell;\n");
+        sb.append("        }\n\n");
+
+        sb.append("        /** Returns false when the record does not fit, in which case nothing was queued. */\n");
+        sb.append("        boolean submit(int methodId, MessageLite request) throws IOException {\n");
+        sb.append("            int size = request.getSerializedSize();\n");
+        sb.append("            long length = RECORD_HEADER + (long) size;\n");
+        sb.append("            long span = (length + 7) & ~7L;\n");
+        sb.append("            if (span > this.capacity / 2) {\n");
+        sb.append("                return false;\n");
+        sb.append("            }\n\n");
+
+        sb.append("            long tail = (long) LONG.getVolatile(this.control, TAIL_OFFSET);\n");
+        sb.append("            long head;\n");
+        sb.append("            long reserved;\n");
+        sb.append("            while (true) {\n");
+        sb.append("                head = (long) LONG.getAcquire(this.control, HEAD_OFFSET);\n");
+        sb.append("                long contiguous = this.capacity - (tail & this.mask);\n");
+        sb.append("                reserved = span <= contiguous ? span : contiguous + span;\n");
+        sb.append("                if (tail + reserved - head > this.capacity) {\n");
+        sb.append("                    this.ringDoorbell();\n");
+        sb.append("                    return false;\n");
+        sb.append("                }\n");
+        sb.append("                long witness = (long) LONG.compareAndExchange(this.control, TAIL_OFFSET, tail, tail + reserved);\n");
+        sb.append("                if (witness == tail) {\n");
+        sb.append("                    break;\n");
+        sb.append("                }\n");
+        sb.append("                tail = witness;\n");
+        sb.append("            }\n\n");
+
+        sb.append("            long position = tail & this.mask;\n");
+        sb.append("            if (reserved != span) {\n");
+        sb.append("                // Records never wrap, so the rest of the ring is skipped and the record starts over at 0\n");
+        sb.append("                this.publish(position, this.capacity - position, SKIP_RECORD);\n");
+        sb.append("                position = 0;\n");
+        sb.append("            }\n\n");
 
         sb.append("            try {\n");
-        sb.append("                return ").append(outputType).append(".parseFrom(outputBytes);\n");
-        sb.append("            } finally {\n");
-        sb.append("                freeNative.invokeExact(resultPtr, outputLen);\n");
+        sb.append("                CodedOutputStream output = CodedOutputStream.newInstance(\n");
+        sb.append("                    this.data.asSlice(position + RECORD_HEADER, size).asByteBuffer());\n");
+        sb.append("                request.writeTo(output);\n");
+        sb.append("                output.flush();\n");
+        sb.append("            } catch (IOException | RuntimeException e) {\n");
+        sb.append("                // The space is reserved either way, publish it as skipped so the ring keeps moving\n");
+        sb.append("                this.publish(position, span, SKIP_RECORD);\n");
+        sb.append("                throw e;\n");
         sb.append("            }\n");
+        sb.append("            this.publish(position, length, methodId);\n\n");
+
+        sb.append("            if (tail + reserved - head > this.capacity / 2) {\n");
+        sb.append("                this.ringDoorbell();\n");
+        sb.append("            }\n");
+        sb.append("            return true;\n");
+        sb.append("        }\n\n");
+
+        sb.append("        private void publish(long position, long length, int methodId) {\n");
+        sb.append("            this.data.set(ValueLayout.JAVA_INT, position + 4, methodId);\n");
+        sb.append("            INT.setRelease(this.data, position, (int) length);\n");
+        sb.append("        }\n\n");
+
+        sb.append("        private void ringDoorbell() {\n");
+        sb.append("            try {\n");
+        sb.append("                this.doorbell.invokeExact(this.handle);\n");
+        sb.append("            } catch (Throwable t) {\n");
+        sb.append("                throw new RuntimeException(\"FFI call failed\", t);\n");
+        sb.append("            }\n");
+        sb.append("        }\n");
+        sb.append("    }\n\n");
+    }
+
+    private static void generateResponseDecode(StringBuilder sb, String resultType, String reader) {
+        if (pooled) {
+            sb.append("            ").append(resultType).append(" response = readResponse(resultLen, outputSegment, ");
+            sb.append(reader).append(");\n");
+            sb.append("            buffer.fitOutput(resultLen);\n");
+            sb.append("            return response;\n");
+        } else {
+            sb.append("            return readResponse(resultLen, outputSegment, ").append(reader).append(");\n");
+        }
         sb.append("        } catch (InvalidProtocolBufferException e) {\n");
         sb.append("            throw new RuntimeException(\"Failed to parse response\", e);\n");
         sb.append("        } catch (Throwable t) {\n");
         sb.append("            throw new RuntimeException(\"FFI call failed\", t);\n");
+        if (pooled) {
+            sb.append("        } finally {\n");
+            sb.append("            buffer.release();\n");
+        }
+        sb.append("        }\n");
+        sb.append("    }\n\n");
+    }
+
+    /**
+     * Rust returns -1 when there is no response, and otherwise the response length. A length
+     * over the capacity of the output buffer means the response did not fit: Rust then left it
+     * in a buffer of its own and wrote that buffer's address to the start of the output buffer.
+     * The method is not called again, since it may already have had side effects.
+     */
+    private static void generateResponseHelpers(StringBuilder sb) {
+        sb.append("    @FunctionalInterface\n");
+        sb.append("    private interface ResponseReader<T> {\n");
+        sb.append("        T read(CodedInputStream input) throws IOException;\n");
+        sb.append("    }\n\n");
+
+        // Aliasing stays off, so bytes/string fields are copied and nothing references the
+        // output buffer once it is reused or freed
+        sb.append("    private static <T> T readResponse(long resultLen, MemorySegment output, ResponseReader<T> reader) throws Throwable {\n");
+        sb.append("        if (resultLen < 0) return null;\n");
+        sb.append("        if (resultLen <= output.byteSize()) {\n");
+        sb.append("            return reader.read(CodedInputStream.newInstance(output.asSlice(0, resultLen).asByteBuffer()));\n");
+        sb.append("        }\n\n");
+        sb.append("        MemorySegment spilled = output.get(ValueLayout.ADDRESS, 0).reinterpret(resultLen);\n");
+        sb.append("        try {\n");
+        sb.append("            return reader.read(CodedInputStream.newInstance(spilled.asByteBuffer()));\n");
+        sb.append("        } finally {\n");
+        sb.append("            freeNative.invokeExact(spilled, resultLen);\n");
         sb.append("        }\n");
         sb.append("    }\n\n");
     }
 
+    /**
+     * Batch calls use the {@code patchbukkit.ffi.BatchRequest}/{@code BatchResponse} envelopes.
+     * Their entries are written and read field by field here, so no intermediate ByteStrings or
+     * envelope messages are built on the Java side.
+     */
+    private static void generateBatchHelpers(StringBuilder sb) {
+        sb.append("    private static final int BATCH_ENTRY_TAG = 10;\n\n");
+
+        sb.append("    private static int batchSize(List<? extends MessageLite> requests) {\n");
+        sb.append("        int size = 0;\n");
+        sb.append("        for (MessageLite request : requests) {\n");
+        sb.append("            size += CodedOutputStream.computeMessageSize(1, request);\n");
+        sb.append("        }\n");
+        sb.append("        return size;\n");
+        sb.append("    }\n\n");
+
+        sb.append("    private static void writeBatch(CodedOutputStream output, List<? extends MessageLite> requests) throws java.io.IOException {\n");
+        sb.append("        for (MessageLite request : requests) {\n");
+        sb.append("            output.writeMessage(1, request);\n");
+        sb.append("        }\n");
+        sb.append("    }\n\n");
+
+        sb.append("    private static <T extends MessageLite> List<T> parseBatch(CodedInputStream input, Parser<T> parser) throws java.io.IOException {\n");
+        sb.append("        List<T> results = new ArrayList<>();\n");
+        sb.append("        for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {\n");
+        sb.append("            if (tag != BATCH_ENTRY_TAG) {\n");
+        sb.append("                input.skipField(tag);\n");
+        sb.append("                continue;\n");
+        sb.append("            }\n\n");
+        sb.append("            int limit = input.pushLimit(input.readRawVarint32());\n");
+        sb.append("            T result = null;\n");
+        sb.append("            for (int field = input.readTag(); field != 0; field = input.readTag()) {\n");
+        sb.append("                if (field == BATCH_ENTRY_TAG) {\n");
+        sb.append("                    result = input.readMessage(parser, ExtensionRegistryLite.getEmptyRegistry());\n");
+        sb.append("                } else {\n");
+        sb.append("                    input.skipField(field);\n");
+        sb.append("                }\n");
+        sb.append("            }\n");
+        sb.append("            input.popLimit(limit);\n");
+        sb.append("            results.add(result);\n");
+        sb.append("        }\n");
+        sb.append("        return results;\n");
+        sb.append("    }\n\n");
+    }
+
+    private static boolean isCritical(MethodDescriptorProto method) {
+        return hasBoolOption(method.getOptions().getUnknownFields(), CRITICAL_OPTION);
+    }
+
+    private static long toLongSlots(FixedLayout layout) {
+        return Math.max(1, (layout.size + Long.BYTES - 1) / Long.BYTES);
+    }
+
+    private static void collectLayouts(FixedLayout layout, Map<String, FixedLayout> layouts) {
+        if (layout == null || layouts.containsKey(layout.protoType)) {
+            return;
+        }
+        for (FixedLayout.Member member : layout.members) {
+            collectLayouts(member.nested(), layouts);
+        }
+        layouts.put(layout.protoType, layout);
+    }
+
+    private static void generateLayoutConstant(StringBuilder sb, FixedLayout layout) {
+        sb.append("    /** C layout of {@code ").append(layout.protoType.substring(1));
+        sb.append("}, matching its #[repr(C)] mirror on the Rust side. */\n");
+        sb.append("    private static final StructLayout ").append(toLayoutName(layout)).append(" = MemoryLayout.structLayout(");
+
+        StringJoiner elements = new StringJoiner(",\n", "\n", ");\n\n");
+        long cursor = 0;
+        for (FixedLayout.Member member : layout.members) {
+            if (member.offset() > cursor) {
+                elements.add("        MemoryLayout.paddingLayout(" + (member.offset() - cursor) + ")");
+            }
+            String element = member.nested() != null
+                ? toLayoutName(member.nested())
+                : "ValueLayout." + member.valueLayout();
+            elements.add("        " + element + ".withName(\"" + member.field().getName() + "\")");
+            cursor = member.offset() + member.size();
+        }
+        if (layout.size > cursor) {
+            elements.add("        MemoryLayout.paddingLayout(" + (layout.size - cursor) + ")");
+        }
+        sb.append(elements);
+    }
+
+    /**
+     * Fixed-layout messages are copied field by field between their protobuf builder and the
+     * struct, with offsets taken from the same layout the constant above describes.
+     */
+    private static void generateStructAccessors(StringBuilder sb, FixedLayout layout) {
+        String javaType = resolveJavaType(layout.protoType);
+
+        sb.append("    private static ").append(javaType).append(" read").append(layout.simpleName);
+        sb.append("(MemorySegment segment, long offset) {\n");
+        sb.append("        return ").append(javaType).append(".newBuilder()\n");
+        for (FixedLayout.Member member : layout.members) {
+            String position = member.offset() == 0 ? "offset" : "offset + " + member.offset();
+            sb.append("            .set").append(toPascalCase(member.field().getName())).append("(");
+            if (member.nested() != null) {
+                sb.append("read").append(member.nested().simpleName).append("(segment, ").append(position).append(")");
+            } else {
+                sb.append("segment.get(ValueLayout.").append(member.valueLayout()).append(", ").append(position).append(")");
+            }
+            sb.append(")\n");
+        }
+        sb.append("            .build();\n");
+        sb.append("    }\n\n");
+
+        sb.append("    private static void write").append(layout.simpleName);
+        sb.append("(MemorySegment segment, long offset, ").append(javaType).append(" message) {\n");
+        for (FixedLayout.Member member : layout.members) {
+            String position = member.offset() == 0 ? "offset" : "offset + " + member.offset();
+            String getter = "message.get" + toPascalCase(member.field().getName()) + "()";
+            if (member.nested() != null) {
+                sb.append("        write").append(member.nested().simpleName).append("(segment, ").append(position);
+                sb.append(", ").append(getter).append(");\n");
+            } else {
+                sb.append("        segment.set(ValueLayout.").append(member.valueLayout()).append(", ").append(position);
+                sb.append(", ").append(getter).append(");\n");
+            }
+        }
+        sb.append("    }\n\n");
+    }
+
+    /**
+     * Custom options are not registered with the parser, so they arrive as unknown fields on
+     * the options message.
+     */
+    private static boolean hasBoolOption(UnknownFieldSet fields, int number) {
+        if (!fields.hasField(number)) {
+            return false;
+        }
+        List<Long> values = fields.getField(number).getVarintList();
+        return !values.isEmpty() && values.get(values.size() - 1) != 0;
+    }
+
     private static String resolveJavaType(String protoType) {
         if (typeMap.containsKey(protoType)) {
             return typeMap.get(protoType);
@@ -204,10 +1016,42 @@ public class FfiGenerator {
         return protoType.startsWith(".") ? protoType.substring(1) : protoType;
     }
 
+    private static String toLayoutName(FixedLayout layout) {
+        return toConstantCase(layout.simpleName) + "_LAYOUT";
+    }
+
+    private static String toSubmissionIdName(MethodDescriptorProto method) {
+        return toConstantCase(method.getName()) + "_SUBMISSION_ID";
+    }
+
+    private static String toConstantCase(String name) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (i > 0 && Character.isUpperCase(c) && !Character.isUpperCase(name.charAt(i - 1))) {
+                result.append('_');
+            }
+            result.append(Character.toUpperCase(c));
+        }
+        return result.toString();
+    }
+
     private static String toHandleName(MethodDescriptorProto method) {
         return toCamelCase(method.getName()) + "Native";
     }
 
+    private static String toUpcallMethodName(MethodDescriptorProto method) {
+        return toCamelCase(method.getName()) + "Upcall";
+    }
+
+    private static String toBatchMethodName(MethodDescriptorProto method) {
+        return "batch" + method.getName();
+    }
+
+    private static String toBatchHandleName(MethodDescriptorProto method) {
+        return toBatchMethodName(method) + "Native";
+    }
+
     private static String toCamelCase(String name) {
         return name.isEmpty() ? name : Character.toLowerCase(name.charAt(0)) + name.substring(1);
     }
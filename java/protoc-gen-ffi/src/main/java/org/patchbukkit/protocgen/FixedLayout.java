@@ -0,0 +1,98 @@
+package org.patchbukkit.protocgen;
+
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * C struct layout of a message marked with {@code (patchbukkit.ffi.fixed_layout)}.
+ *
+ * <p>Members follow field declaration order with natural alignment, which is what
+ * {@code #[repr(C)]} produces for the structs generated by rust/build/protobufs.rs. Nested
+ * messages must be fixed-layout themselves and are embedded by value.
+ */
+final class FixedLayout {
+
+    /** A struct member. {@code valueLayout} is null when the member is a nested struct. */
+    record Member(FieldDescriptorProto field, long offset, String valueLayout, FixedLayout nested) {
+        long size() {
+            return this.nested != null ? this.nested.size : byteSize(this.valueLayout);
+        }
+    }
+
+    final String protoType;
+    final String simpleName;
+    final List<Member> members = new ArrayList<>();
+    long size;
+    long alignment = 1;
+
+    private FixedLayout(String protoType, String simpleName) {
+        this.protoType = protoType;
+        this.simpleName = simpleName;
+    }
+
+    static FixedLayout of(String protoType, DescriptorProto message, Function<String, FixedLayout> nestedLayouts) {
+        FixedLayout layout = new FixedLayout(protoType, message.getName());
+
+        for (FieldDescriptorProto field : message.getFieldList()) {
+            // proto3 optional fields are synthetic oneofs, so hasOneofIndex() covers them as well
+            if (field.getLabel() == FieldDescriptorProto.Label.LABEL_REPEATED || field.hasOneofIndex()) {
+                throw unsupported(protoType, field, "repeated, optional and oneof fields have no fixed layout");
+            }
+
+            String valueLayout = valueLayout(field.getType());
+            FixedLayout nested = null;
+            long memberSize;
+            long memberAlignment;
+            if (valueLayout != null) {
+                memberSize = byteSize(valueLayout);
+                memberAlignment = memberSize;
+            } else if (field.getType() == FieldDescriptorProto.Type.TYPE_MESSAGE
+                && (nested = nestedLayouts.apply(field.getTypeName())) != null) {
+                memberSize = nested.size;
+                memberAlignment = nested.alignment;
+            } else {
+                throw unsupported(protoType, field, "only scalars and fixed_layout messages are allowed");
+            }
+
+            long offset = alignUp(layout.size, memberAlignment);
+            layout.members.add(new Member(field, offset, valueLayout, nested));
+            layout.size = offset + memberSize;
+            layout.alignment = Math.max(layout.alignment, memberAlignment);
+        }
+
+        layout.size = alignUp(layout.size, layout.alignment);
+        return layout;
+    }
+
+    private static String valueLayout(FieldDescriptorProto.Type type) {
+        return switch (type) {
+            case TYPE_DOUBLE -> "JAVA_DOUBLE";
+            case TYPE_FLOAT -> "JAVA_FLOAT";
+            case TYPE_INT64, TYPE_UINT64, TYPE_SINT64, TYPE_FIXED64, TYPE_SFIXED64 -> "JAVA_LONG";
+            case TYPE_INT32, TYPE_UINT32, TYPE_SINT32, TYPE_FIXED32, TYPE_SFIXED32 -> "JAVA_INT";
+            case TYPE_BOOL -> "JAVA_BOOLEAN";
+            default -> null;
+        };
+    }
+
+    private static long byteSize(String valueLayout) {
+        return switch (valueLayout) {
+            case "JAVA_DOUBLE", "JAVA_LONG" -> 8;
+            case "JAVA_FLOAT", "JAVA_INT" -> 4;
+            default -> 1;
+        };
+    }
+
+    private static long alignUp(long value, long alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+
+    private static IllegalArgumentException unsupported(String protoType, FieldDescriptorProto field, String reason) {
+        return new IllegalArgumentException(
+            "Field " + field.getName() + " of fixed_layout message " + protoType + " is not supported: " + reason);
+    }
+}
@@ -13,3 +13,4 @@ plugins {
 rootProject.name = "patchbukkit"
 include("patchbukkit")
 include("protoc-gen-ffi")
+include("bridge-bench")
@@ -0,0 +1,15 @@
+use std::path::PathBuf;
+
+// Shares the generator with the real library, so both export the same entry points
+#[allow(dead_code)]
+#[path = "../build/protobufs.rs"]
+mod protobufs;
+
+fn main() {
+    let base = PathBuf::from(std::env::var("CARGO_MANIFEST_DIR").unwrap());
+    let proto_path = base.join("../../proto");
+    println!("cargo::rerun-if-changed={}", proto_path.display());
+    println!("cargo::rerun-if-changed=../build/protobufs.rs");
+
+    protobufs::generate_protobufs(&proto_path, "crate::echo", false);
+}
@@ -0,0 +1,102 @@
+//! Callbacks of the stub library. Each one answers with data derived from its request, and
+//! GetRegistryData with as many sound events as the benchmark asked for, so response sizes
+//! can be varied as well.
+
+use std::sync::atomic::{AtomicU32, Ordering};
+
+use crate::proto::patchbukkit::{
+    abilities::{Abilities, SetAbilitiesRequest, SetAbilitiesResponse},
+    common::{Location, Uuid, Vec3, World},
+    events::{CallEventRequest, CallEventResponse, RegisterEventRequest},
+    message::SendMessageRequest,
+    metrics::{GetJvmMetricsRequest, JvmMetrics},
+    registry::{
+        GetRegistryDataRequest, GetRegistryDataResponse, SoundEvent, SoundEventRegistryData,
+        get_registry_data_response::Registry,
+    },
+    sound::{PlayerEntityPlaySoundRequest, PlayerPlaySoundRequest},
+};
+
+static REGISTRY_SIZE: AtomicU32 = AtomicU32::new(1);
+
+/// Sets how many sound events GetRegistryData answers with.
+#[unsafe(no_mangle)]
+pub extern "C" fn bridge_stub_set_registry_size(sound_events: u32) {
+    REGISTRY_SIZE.store(sound_events, Ordering::Relaxed);
+}
+
+pub fn ffi_native_bridge_get_abilities_impl(request: Uuid) -> Option<Abilities> {
+    Some(Abilities {
+        flying: request.most_significant_bits & 1 == 1,
+        allow_flying: true,
+        fly_speed: 0.05,
+        walk_speed: 0.1,
+        ..Default::default()
+    })
+}
+
+pub fn ffi_native_bridge_set_abilities_impl(
+    request: SetAbilitiesRequest,
+) -> Option<SetAbilitiesResponse> {
+    Some(SetAbilitiesResponse {
+        success: request.uuid.is_some() && request.abilities.is_some(),
+    })
+}
+
+pub fn ffi_native_bridge_register_event_impl(_request: RegisterEventRequest) -> Option<()> {
+    Some(())
+}
+
+pub fn ffi_native_bridge_call_event_impl(request: CallEventRequest) -> Option<CallEventResponse> {
+    Some(CallEventResponse {
+        handled: request.event.is_some(),
+    })
+}
+
+pub fn ffi_native_bridge_send_message_impl(_request: SendMessageRequest) -> Option<()> {
+    Some(())
+}
+
+pub fn ffi_native_bridge_get_location_impl(request: Uuid) -> Option<Location> {
+    Some(Location {
+        world: Some(World {
+            uuid: Some(request),
+        }),
+        position: Some(Vec3 {
+            x: request.most_significant_bits as f64,
+            y: 64.0,
+            z: request.least_significant_bits as f64,
+        }),
+        yaw: 90.0,
+        pitch: 0.0,
+    })
+}
+
+pub fn ffi_native_bridge_get_registry_data_impl(
+    _request: GetRegistryDataRequest,
+) -> Option<GetRegistryDataResponse> {
+    let sound_events = (0..REGISTRY_SIZE.load(Ordering::Relaxed))
+        .map(|id| SoundEvent {
+            id,
+            name: format!("minecraft:bench.sound.{id:08}"),
+        })
+        .collect();
+
+    Some(GetRegistryDataResponse {
+        registry: Some(Registry::SoundEvent(SoundEventRegistryData { sound_events })),
+    })
+}
+
+pub fn ffi_native_bridge_player_entity_play_sound_impl(
+    _request: PlayerEntityPlaySoundRequest,
+) -> Option<()> {
+    Some(())
+}
+
+pub fn ffi_native_bridge_player_play_sound_impl(_request: PlayerPlaySoundRequest) -> Option<()> {
+    Some(())
+}
+
+pub fn ffi_native_bridge_get_jvm_metrics_impl(_request: GetJvmMetricsRequest) -> Option<JvmMetrics> {
+    Some(JvmMetrics::default())
+}
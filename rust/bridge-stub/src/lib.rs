@@ -0,0 +1,79 @@
+//! Stand-in for the PatchBukkit native library, used by the benchmarks in java/bridge-bench.
+//!
+//! It exports the same generated entry points as the real library, but its callbacks only
+//! decode the request and answer with data taken from it, so a bridge call can be measured
+//! without a Pumpkin server. Java looks the entry points up by symbol name instead of
+//! receiving them through j4rs.
+
+mod echo;
+
+#[path = "../../src/java/submission_ring.rs"]
+mod submission_ring;
+
+pub mod proto {
+    pub mod patchbukkit {
+        pub mod bridge {
+            include!(concat!(env!("OUT_DIR"), "/patchbukkit.bridge.rs"));
+        }
+
+        pub mod common {
+            include!(concat!(env!("OUT_DIR"), "/patchbukkit.common.rs"));
+        }
+
+        pub mod events {
+            include!(concat!(env!("OUT_DIR"), "/patchbukkit.events.rs"));
+        }
+
+        pub mod ffi {
+            include!(concat!(env!("OUT_DIR"), "/patchbukkit.ffi.rs"));
+        }
+
+        pub mod abilities {
+            include!(concat!(env!("OUT_DIR"), "/patchbukkit.abilities.rs"));
+        }
+
+        pub mod message {
+            include!(concat!(env!("OUT_DIR"), "/patchbukkit.message.rs"));
+        }
+
+        pub mod metrics {
+            include!(concat!(env!("OUT_DIR"), "/patchbukkit.metrics.rs"));
+        }
+
+        pub mod registry {
+            include!(concat!(env!("OUT_DIR"), "/patchbukkit.registry.rs"));
+        }
+
+        pub mod sound {
+            include!(concat!(env!("OUT_DIR"), "/patchbukkit.sound.rs"));
+        }
+    }
+
+    include!(concat!(env!("OUT_DIR"), "/ffi_init.rs"));
+}
+
+/// Starts the NativeBridge submission ring and writes the first three arguments of
+/// `NativeBridgeFfi.initSubmissionRing` to `out`: the ring handle, its memory and capacity.
+///
+/// # Safety
+///
+/// - `out` must be a valid pointer to three writable `i64`s
+#[unsafe(no_mangle)]
+pub unsafe extern "C" fn bridge_stub_start_submission_ring(out: *mut i64) -> bool {
+    let ring = match submission_ring::SubmissionRing::start(
+        proto::patchbukkit::bridge::ffi_native_bridge_dispatch_submission,
+    ) {
+        Ok(ring) => ring,
+        Err(e) => {
+            eprintln!("Failed to start the submission ring: {e}");
+            return false;
+        }
+    };
+
+    unsafe {
+        out.write(std::ptr::from_ref(ring) as i64);
+        out.add(1).write(ring.memory() as i64);
+        out.add(2).write(ring.capacity() as i64);
+    }
+    true
+}
@@ -1,19 +1,213 @@
 use glob::glob;
+use prost::Message;
 use prost_build::{Config, Service, ServiceGenerator};
+use std::collections::{BTreeMap, HashMap};
 use std::io::Write;
-use std::path::PathBuf;
+use std::path::{Path, PathBuf};
+use std::process::Command;
 use std::sync::{Arc, Mutex};
 
+/// Just enough of `google/protobuf/descriptor.proto` to read the options declared in
+/// `proto/patchbukkit/ffi/options.proto`.
+///
+/// `prost_types` drops unknown fields while decoding, and custom options are unknown fields
+/// to it, so the descriptor set is decoded a second time through these mirrors.
+mod descriptor {
+    #[derive(Clone, PartialEq, prost::Message)]
+    pub struct FileDescriptorSet {
+        #[prost(message, repeated, tag = "1")]
+        pub file: Vec<FileDescriptorProto>,
+    }
+
+    #[derive(Clone, PartialEq, prost::Message)]
+    pub struct FileDescriptorProto {
+        #[prost(string, optional, tag = "2")]
+        pub package: Option<String>,
+        #[prost(message, repeated, tag = "4")]
+        pub message_type: Vec<DescriptorProto>,
+        #[prost(message, repeated, tag = "6")]
+        pub service: Vec<ServiceDescriptorProto>,
+    }
+
+    #[derive(Clone, PartialEq, prost::Message)]
+    pub struct DescriptorProto {
+        #[prost(string, optional, tag = "1")]
+        pub name: Option<String>,
+        #[prost(message, repeated, tag = "2")]
+        pub field: Vec<FieldDescriptorProto>,
+        #[prost(message, repeated, tag = "3")]
+        pub nested_type: Vec<DescriptorProto>,
+        #[prost(message, optional, tag = "7")]
+        pub options: Option<MessageOptions>,
+    }
+
+    #[derive(Clone, PartialEq, prost::Message)]
+    pub struct FieldDescriptorProto {
+        #[prost(string, optional, tag = "1")]
+        pub name: Option<String>,
+        #[prost(int32, optional, tag = "4")]
+        pub label: Option<i32>,
+        #[prost(int32, optional, tag = "5")]
+        pub r#type: Option<i32>,
+        #[prost(string, optional, tag = "6")]
+        pub type_name: Option<String>,
+        #[prost(int32, optional, tag = "9")]
+        pub oneof_index: Option<i32>,
+    }
+
+    #[derive(Clone, PartialEq, prost::Message)]
+    pub struct MessageOptions {
+        /// `patchbukkit.ffi.fixed_layout`
+        #[prost(bool, optional, tag = "50002")]
+        pub fixed_layout: Option<bool>,
+    }
+
+    #[derive(Clone, PartialEq, prost::Message)]
+    pub struct ServiceDescriptorProto {
+        #[prost(string, optional, tag = "1")]
+        pub name: Option<String>,
+        #[prost(message, optional, tag = "3")]
+        pub options: Option<ServiceOptions>,
+    }
+
+    #[derive(Clone, PartialEq, prost::Message)]
+    pub struct ServiceOptions {
+        /// `patchbukkit.ffi.batch`
+        #[prost(bool, optional, tag = "50001")]
+        pub batch: Option<bool>,
+        /// `patchbukkit.ffi.submission_ring`
+        #[prost(bool, optional, tag = "50003")]
+        pub submission_ring: Option<bool>,
+        /// `patchbukkit.ffi.upcall`
+        #[prost(bool, optional, tag = "50005")]
+        pub upcall: Option<bool>,
+    }
+}
+
+/// FFI options of every service, keyed by `package.Service`, and every `fixed_layout`
+/// message, keyed by its fully qualified proto type (`.package.Message`).
+#[derive(Default)]
+struct FfiOptions {
+    batch_services: HashMap<String, bool>,
+    submission_ring_services: HashMap<String, bool>,
+    upcall_services: HashMap<String, bool>,
+    fixed_messages: BTreeMap<String, Vec<descriptor::FieldDescriptorProto>>,
+}
+
+impl FfiOptions {
+    fn decode(descriptor_set: &[u8]) -> Self {
+        let descriptor_set = descriptor::FileDescriptorSet::decode(descriptor_set)
+            .expect("Failed to decode FFI options from the descriptor set");
+
+        let mut options = Self::default();
+        for file in descriptor_set.file {
+            let package = file.package.unwrap_or_default();
+            for message in file.message_type {
+                reject_nested_fixed_messages(&message);
+                if message.options.and_then(|o| o.fixed_layout).unwrap_or(false) {
+                    options.fixed_messages.insert(
+                        format!(".{package}.{}", message.name.unwrap_or_default()),
+                        message.field,
+                    );
+                }
+            }
+            for service in file.service {
+                let name = format!("{package}.{}", service.name.unwrap_or_default());
+                let service_options = service.options.unwrap_or_default();
+                options
+                    .batch_services
+                    .insert(name.clone(), service_options.batch.unwrap_or(false));
+                options.submission_ring_services.insert(
+                    name.clone(),
+                    service_options.submission_ring.unwrap_or(false),
+                );
+                options
+                    .upcall_services
+                    .insert(name, service_options.upcall.unwrap_or(false));
+            }
+        }
+        options
+    }
+
+    fn batch(&self, package: &str, service: &str) -> bool {
+        self.batch_services
+            .get(&format!("{package}.{service}"))
+            .copied()
+            .unwrap_or(false)
+    }
+
+    fn submission_ring(&self, package: &str, service: &str) -> bool {
+        self.submission_ring_services
+            .get(&format!("{package}.{service}"))
+            .copied()
+            .unwrap_or(false)
+    }
+
+    fn upcall(&self, package: &str, service: &str) -> bool {
+        self.upcall_services
+            .get(&format!("{package}.{service}"))
+            .copied()
+            .unwrap_or(false)
+    }
+
+    fn fixed_layout(&self, proto_type: &str) -> bool {
+        self.fixed_messages.contains_key(proto_type)
+    }
+}
+
+fn reject_nested_fixed_messages(parent: &descriptor::DescriptorProto) {
+    for nested in &parent.nested_type {
+        if nested
+            .options
+            .as_ref()
+            .and_then(|o| o.fixed_layout)
+            .unwrap_or(false)
+        {
+            panic!(
+                "fixed_layout is only supported on top-level messages: {}.{}",
+                parent.name(),
+                nested.name()
+            );
+        }
+        reject_nested_fixed_messages(nested);
+    }
+}
+
+/// Rust type of a scalar field in a `#[repr(C)]` struct, keyed by `FieldDescriptorProto.Type`.
+/// Must agree with `FixedLayout.valueLayout` in protoc-gen-ffi.
+fn fixed_scalar_type(field_type: i32) -> Option<&'static str> {
+    Some(match field_type {
+        1 => "f64",
+        2 => "f32",
+        3 | 18 => "i64",
+        4 | 6 => "u64",
+        5 | 15 | 17 => "i32",
+        7 | 13 => "u32",
+        8 => "bool",
+        _ => return None,
+    })
+}
+
+/// `FieldDescriptorProto.Type.TYPE_MESSAGE`
+const TYPE_MESSAGE: i32 = 11;
+/// `FieldDescriptorProto.Label.LABEL_REPEATED`
+const LABEL_REPEATED: i32 = 3;
+
 #[derive(Clone)]
 struct ServiceInfo {
     java_class: String,
     methods: Vec<MethodInfo>,
     module_path: String,
+    /// Dispatch function of the service's submission ring, if it has one
+    submission_dispatch: Option<String>,
+    /// Function storing the upcall stub addresses, set for services implemented in Java
+    upcall_init: Option<String>,
 }
 
 #[derive(Clone)]
 struct MethodInfo {
     fn_name: String,
+    batch_fn_name: Option<String>,
 }
 
 #[derive(Default)]
@@ -24,14 +218,22 @@ struct SharedState {
 pub struct FfiServiceGenerator {
     impl_module: String,
     proto_module: String,
+    options: FfiOptions,
+    structs_generated: bool,
     state: Arc<Mutex<SharedState>>,
 }
 
 impl FfiServiceGenerator {
-    pub fn new(impl_module: impl Into<String>, proto_module: impl Into<String>) -> Self {
+    fn new(
+        impl_module: impl Into<String>,
+        proto_module: impl Into<String>,
+        options: FfiOptions,
+    ) -> Self {
         Self {
             impl_module: impl_module.into(),
             proto_module: proto_module.into(),
+            options,
+            structs_generated: false,
             state: Arc::new(Mutex::new(SharedState::default())),
         }
     }
@@ -71,59 +273,393 @@ impl FfiServiceGenerator {
     fn get_state(&self) -> Arc<Mutex<SharedState>> {
         Arc::clone(&self.state)
     }
-}
 
-impl ServiceGenerator for FfiServiceGenerator {
-    fn generate(&mut self, service: Service, buf: &mut String) {
-        let module_path = self.package_to_module_path(&service.package);
+    fn struct_name(&self, proto_type: &str) -> String {
+        let type_name = proto_type.rsplit('.').next().unwrap_or_default();
+        format!("{}Ffi", to_pascal_case(type_name))
+    }
 
-        let mut service_info = ServiceInfo {
-            java_class: self.proto_package_to_java_class(&service.package, &service.name),
-            methods: Vec::new(),
-            module_path,
+    /// Emits the `#[repr(C)]` mirror of a `fixed_layout` message and its conversions. Members
+    /// keep field order, so the layout matches the `StructLayout` built by protoc-gen-ffi.
+    fn generate_struct(&self, buf: &mut String, proto_type: &str) {
+        let message_type = self.proto_type_to_rust(proto_type);
+        let struct_name = self.struct_name(proto_type);
+
+        let mut members = String::new();
+        let mut from_message = String::new();
+        let mut from_struct = String::new();
+        for field in &self.options.fixed_messages[proto_type] {
+            let name = field.name();
+            if field.label() == LABEL_REPEATED || field.oneof_index.is_some() {
+                panic!(
+                    "Field {name} of fixed_layout message {proto_type} is not supported: \
+                     repeated, optional and oneof fields have no fixed layout"
+                );
+            }
+
+            if let Some(scalar) = fixed_scalar_type(field.r#type()) {
+                members.push_str(&format!("    pub {name}: {scalar},\n"));
+                from_message.push_str(&format!("            {name}: message.{name},\n"));
+                from_struct.push_str(&format!("            {name}: value.{name},\n"));
+            } else if field.r#type() == TYPE_MESSAGE && self.options.fixed_layout(field.type_name())
+            {
+                let nested = self.struct_name(field.type_name());
+                members.push_str(&format!("    pub {name}: {nested},\n"));
+                from_message.push_str(&format!(
+                    "            {name}: message.{name}.unwrap_or_default().into(),\n"
+                ));
+                from_struct.push_str(&format!("            {name}: Some(value.{name}.into()),\n"));
+            } else {
+                panic!(
+                    "Field {name} of fixed_layout message {proto_type} is not supported: \
+                     only scalars and fixed_layout messages are allowed"
+                );
+            }
+        }
+
+        buf.push_str(&format!(
+            r#"/// C layout of `{0}`, passed across the FFI boundary instead of protobuf bytes.
+#[repr(C)]
+#[derive(Clone, Copy, Debug, Default, PartialEq)]
+pub struct {struct_name} {{
+{members}}}
+
+impl From<{message_type}> for {struct_name} {{
+    fn from(message: {message_type}) -> Self {{
+        Self {{
+{from_message}        }}
+    }}
+}}
+
+impl From<{struct_name}> for {message_type} {{
+    fn from(value: {struct_name}) -> Self {{
+        Self {{
+{from_struct}        }}
+    }}
+}}
+
+"#,
+            proto_type.trim_start_matches('.')
+        ));
+    }
+
+    /// Emits the entry point of a single method. Protobuf requests arrive as
+    /// `(input_ptr, input_len)` and protobuf responses are written to a caller-owned
+    /// `(output_ptr, output_cap)` buffer with the length returned, while
+    /// `fixed_layout` requests arrive as `input: *const Struct` and `fixed_layout` responses
+    /// are written to a caller-owned `output: *mut Struct` with a `bool` result.
+    fn generate_fn(
+        &self,
+        buf: &mut String,
+        fn_name: &str,
+        input_type: &str,
+        input_struct: Option<String>,
+        output_struct: Option<String>,
+    ) {
+        let mut safety = String::new();
+        let mut params = String::new();
+        let mut body = String::new();
+
+        let fail = if output_struct.is_some() {
+            "return false;"
+        } else {
+            "return -1;"
         };
 
-        for method in &service.methods {
-            let fn_name = format!("ffi_{}_{}", to_snake_case(&service.name), &method.name);
-            let input_type = self.proto_type_to_rust(&method.input_proto_type);
+        if input_struct.is_none() {
+            body.push_str("    use prost::Message;\n");
+        }
 
-            service_info.methods.push(MethodInfo {
-                fn_name: fn_name.clone(),
-            });
+        match &input_struct {
+            Some(struct_name) => {
+                safety.push_str(&format!(
+                    "/// - `input` must be a valid pointer to a `{struct_name}`\n"
+                ));
+                params.push_str(&format!("    input: *const {struct_name},\n"));
+                body.push_str(&format!(
+                    "    let request = {input_type}::from(unsafe {{ input.read() }});\n"
+                ));
+            }
+            None => {
+                safety.push_str("/// - `input_ptr` must be a valid pointer to `input_len` bytes of memory\n");
+                params.push_str("    input_ptr: *const u8,\n    input_len: usize,\n");
+                body.push_str(&format!(
+                    r#"    let input_slice = unsafe {{ std::slice::from_raw_parts(input_ptr, input_len) }};
+    let Ok(request) = {input_type}::decode(input_slice) else {{
+        {fail}
+    }};
+"#
+                ));
+            }
+        }
+
+        body.push_str(&format!(
+            "    let Some(response) = {}::{fn_name}_impl(request) else {{\n        {fail}\n    }};\n",
+            self.impl_module
+        ));
+
+        let signature_end = match &output_struct {
+            Some(struct_name) => {
+                safety.push_str(&format!(
+                    "/// - `output` must be a valid pointer to write a `{struct_name}` to\n"
+                ));
+                params.push_str(&format!("    output: *mut {struct_name},\n"));
+                body.push_str("    unsafe { output.write(response.into()) };\n    true\n");
+                ") -> bool"
+            }
+            None => {
+                safety.push_str(
+                    "/// - `output_ptr` must be a valid, 8 byte aligned pointer to `output_cap` writable bytes\n\
+                     /// - A spilled response must be freed by the caller, see `ffi_write_response`\n",
+                );
+                params.push_str("    output_ptr: *mut u8,\n    output_cap: usize,\n");
+                body.push_str(
+                    "    unsafe { crate::proto::ffi_write_response(&response, output_ptr, output_cap) }\n",
+                );
+                ") -> i64"
+            }
+        };
+
+        buf.push_str(&format!(
+            r#"/// FFI function for {fn_name}
+///
+/// # Safety
+///
+{safety}#[unsafe(no_mangle)]
+pub unsafe extern "C" fn {fn_name}(
+{params}{signature_end} {{
+{body}}}
+"#
+        ));
+    }
+
+    /// Emits the function the submission ring drain thread calls for every queued request.
+    /// Method ids are indices into the service's method list, as in the Java stubs.
+    fn generate_dispatch_fn(
+        &self,
+        buf: &mut String,
+        dispatch_fn_name: &str,
+        service_name: &str,
+        submissions: &[(usize, String, String)],
+    ) {
+        let mut arms = String::new();
+        for (method_id, fn_name, input_type) in submissions {
+            arms.push_str(&format!(
+                r#"        {method_id} => match {input_type}::decode(payload) {{
+            Ok(request) => {{
+                let _ = {0}::{fn_name}_impl(request);
+            }}
+            Err(e) => log::error!("Failed to decode submitted {fn_name} request: {{e}}"),
+        }},
+"#,
+                self.impl_module
+            ));
+        }
+
+        buf.push_str(&format!(
+            r#"/// Applies one request queued through the {service_name} submission ring
+pub fn {dispatch_fn_name}(method_id: i32, payload: &[u8]) {{
+    use prost::Message;
+    match method_id {{
+{arms}        _ => log::error!("Unknown submission method id {{method_id}}"),
+    }}
+}}
+"#
+        ));
+    }
+
+    /// Emits the Rust side of a service implemented in Java: a table of upcall stub addresses
+    /// filled in at startup and one typed function per method calling its stub. Requests are
+    /// encoded into a per-thread buffer that is reused across upcalls, and responses are
+    /// decoded straight out of the Java per-thread buffer, which stays valid until the next
+    /// upcall on the same thread.
+    fn generate_upcall_fns(&self, buf: &mut String, init_fn_name: &str, service: &Service) {
+        let table = format!("{}_UPCALLS", to_snake_case(&service.name).to_uppercase());
+
+        buf.push_str(&format!(
+            r#"/// Upcall stubs of the {0} service, in method order
+static {table}: std::sync::OnceLock<Vec<usize>> = std::sync::OnceLock::new();
+
+thread_local! {{
+    /// Requests of the {0} service are encoded into this buffer, which keeps its capacity
+    /// between upcalls so a request costs no allocation once the buffer has grown to fit it
+    static {table}_INPUT: std::cell::Cell<Vec<u8>> = const {{ std::cell::Cell::new(Vec::new()) }};
+}}
+
+/// Stores the stub addresses returned by `{0}Ffi.upcallAddresses`
+pub fn {init_fn_name}(addresses: Vec<i64>) {{
+    let _ = {table}.set(addresses.into_iter().map(|address| address as usize).collect());
+}}
+"#,
+            service.name
+        ));
+
+        for (method_id, method) in service.methods.iter().enumerate() {
+            let fn_name = format!("upcall_{}_{}", to_snake_case(&service.name), &method.name);
+            let input_type = self.proto_type_to_rust(&method.input_proto_type);
+            let output_type = self.proto_type_to_rust(&method.output_proto_type);
 
             buf.push_str(&format!(
-                r#"/// FFI function for {fn_name}
+                r#"/// Calls `{0}.{1}` on the Java side through its upcall stub
+///
+/// Returns `None` when the stubs are not initialized yet, no handler is registered or the
+/// handler produced no response.
+pub fn {fn_name}(request: &{input_type}) -> Option<{output_type}> {{
+    use prost::Message;
+    type Upcall = unsafe extern "C" fn(*const u8, usize, *mut usize) -> *const u8;
+
+    let address = *{table}.get()?.get({method_id})?;
+    // The stub was created by `{0}Ffi` for exactly this signature
+    let upcall = unsafe {{ std::mem::transmute::<usize, Upcall>(address) }};
+
+    // Taken out for the call, so an upcall made from within the handler gets a buffer of its own
+    let mut input = {table}_INPUT.take();
+    input.clear();
+    request.encode_raw(&mut input);
+    let mut output_len = 0usize;
+    let output = unsafe {{ upcall(input.as_ptr(), input.len(), &raw mut output_len) }};
+    {table}_INPUT.set(input);
+    if output.is_null() {{
+        return None;
+    }}
+
+    let output_slice = unsafe {{ std::slice::from_raw_parts(output, output_len) }};
+    match {output_type}::decode(output_slice) {{
+        Ok(response) => Some(response),
+        Err(e) => {{
+            log::error!("Failed to decode {1} upcall response: {{e}}");
+            None
+        }}
+    }}
+}}
+"#,
+                service.name, method.proto_name
+            ));
+        }
+    }
+
+    fn generate_batch_fn(
+        &self,
+        buf: &mut String,
+        fn_name: &str,
+        batch_fn_name: &str,
+        input_type: &str,
+    ) {
+        let batch_request = self.proto_type_to_rust(".patchbukkit.ffi.BatchRequest");
+        let batch_response = self.proto_type_to_rust(".patchbukkit.ffi.BatchResponse");
+        let batch_result = self.proto_type_to_rust(".patchbukkit.ffi.BatchResult");
+
+        buf.push_str(&format!(
+            r#"/// Batched FFI function for {fn_name}
+///
+/// Runs `{fn_name}_impl` once per entry of a `BatchRequest` and answers with a
+/// `BatchResponse` holding the results in request order.
 ///
 /// # Safety
 ///
 /// - `input_ptr` must be a valid pointer to `input_len` bytes of memory
-/// - `output_len` must be a valid pointer to write the output length
-/// - The caller is responsible for freeing the returned pointer using `ffi_free_bytes`
+/// - `output_ptr` must be a valid, 8 byte aligned pointer to `output_cap` writable bytes
+/// - A spilled response must be freed by the caller, see `ffi_write_response`
 #[unsafe(no_mangle)]
-pub unsafe extern "C" fn {fn_name}(
+pub unsafe extern "C" fn {batch_fn_name}(
     input_ptr: *const u8,
     input_len: usize,
-    output_len: *mut usize,
-) -> *mut u8 {{
+    output_ptr: *mut u8,
+    output_cap: usize,
+) -> i64 {{
     use prost::Message;
     let input_slice = unsafe {{ std::slice::from_raw_parts(input_ptr, input_len) }};
-    let Ok(request) = {input_type}::decode(input_slice) else {{
-        unsafe {{ *output_len = 0 }};
-        return std::ptr::null_mut();
-    }};
-    let Some(response) = {0}::{fn_name}_impl(request) else {{
-        unsafe {{ *output_len = 0 }};
-        return std::ptr::null_mut();
+    let Ok(batch) = {batch_request}::decode(input_slice) else {{
+        return -1;
     }};
-    let encoded = response.encode_to_vec();
-    unsafe {{ *output_len = encoded.len() }};
-    let ptr = encoded.as_ptr() as *mut u8;
-    std::mem::forget(encoded);
-    ptr
+    let results = batch
+        .requests
+        .iter()
+        .map(|request| {batch_result} {{
+            payload: {input_type}::decode(request.as_slice())
+                .ok()
+                .and_then({0}::{fn_name}_impl)
+                .map(|response| response.encode_to_vec()),
+        }})
+        .collect();
+    let response = {batch_response} {{ results }};
+    unsafe {{ crate::proto::ffi_write_response(&response, output_ptr, output_cap) }}
 }}
 "#,
-                self.impl_module
-            ));
+            self.impl_module
+        ));
+    }
+}
+
+impl ServiceGenerator for FfiServiceGenerator {
+    fn generate(&mut self, service: Service, buf: &mut String) {
+        let module_path = self.package_to_module_path(&service.package);
+
+        let mut service_info = ServiceInfo {
+            java_class: self.proto_package_to_java_class(&service.package, &service.name),
+            methods: Vec::new(),
+            module_path,
+            submission_dispatch: None,
+            upcall_init: None,
+        };
+        let batch = self.options.batch(&service.package, &service.name);
+        let mut submissions = Vec::new();
+
+        // Struct mirrors live next to the first service, whose module every entry point can reach
+        if !self.structs_generated {
+            self.structs_generated = true;
+            for proto_type in self.options.fixed_messages.keys() {
+                self.generate_struct(buf, proto_type);
+            }
+        }
+
+        if self.options.upcall(&service.package, &service.name) {
+            let init_fn_name = format!("init_{}_upcalls", to_snake_case(&service.name));
+            self.generate_upcall_fns(buf, &init_fn_name, &service);
+            service_info.upcall_init = Some(init_fn_name);
+            self.state.lock().unwrap().services.push(service_info);
+            return;
+        }
+
+        for (method_id, method) in service.methods.iter().enumerate() {
+            let fn_name = format!("ffi_{}_{}", to_snake_case(&service.name), &method.name);
+            let batch_fn_name = format!(
+                "ffi_{}_batch_{}",
+                to_snake_case(&service.name),
+                &method.name
+            );
+            let input_type = self.proto_type_to_rust(&method.input_proto_type);
+
+            service_info.methods.push(MethodInfo {
+                fn_name: fn_name.clone(),
+                batch_fn_name: batch.then(|| batch_fn_name.clone()),
+            });
+
+            self.generate_fn(
+                buf,
+                &fn_name,
+                &input_type,
+                self.options
+                    .fixed_layout(&method.input_proto_type)
+                    .then(|| self.struct_name(&method.input_proto_type)),
+                self.options
+                    .fixed_layout(&method.output_proto_type)
+                    .then(|| self.struct_name(&method.output_proto_type)),
+            );
+
+            if batch {
+                self.generate_batch_fn(buf, &fn_name, &batch_fn_name, &input_type);
+            }
+
+            if method.output_proto_type == ".google.protobuf.Empty" {
+                submissions.push((method_id, fn_name, input_type));
+            }
+        }
+
+        if self.options.submission_ring(&service.package, &service.name) && !submissions.is_empty() {
+            let dispatch_fn_name = format!("ffi_{}_dispatch_submission", to_snake_case(&service.name));
+            self.generate_dispatch_fn(buf, &dispatch_fn_name, &service.name, &submissions);
+            service_info.submission_dispatch = Some(dispatch_fn_name);
         }
 
         self.state.lock().unwrap().services.push(service_info);
@@ -154,21 +690,60 @@ fn to_snake_case(s: &str) -> String {
         .collect()
 }
 
+/// Runs protoc once for every `.proto` file. The resulting descriptor set feeds both prost
+/// and the FFI options, which prost would otherwise discard.
+fn build_descriptor_set(paths: &[PathBuf], proto_path: &Path, out_dir: &Path) -> Vec<u8> {
+    let descriptor_path = out_dir.join("patchbukkit_descriptor_set.bin");
+
+    let mut cmd = Command::new(prost_build::protoc_from_env());
+    cmd.arg("--include_imports")
+        .arg("--include_source_info")
+        .arg("-I")
+        .arg(proto_path)
+        .arg("-o")
+        .arg(&descriptor_path);
+    if let Some(include) = prost_build::protoc_include_from_env() {
+        cmd.arg("-I").arg(include);
+    }
+    cmd.args(paths);
+
+    let status = cmd.status().expect("Failed to run protoc");
+    assert!(status.success(), "protoc failed with {status}");
+
+    std::fs::read(&descriptor_path).unwrap()
+}
+
 pub fn setup_protobufs(base: PathBuf) {
     let proto_path = base.parent().unwrap().join("proto");
+    generate_protobufs(&proto_path, "crate::java::native_callbacks", true);
+}
+
+/// Generates the prost messages, the FFI entry points calling `{impl_module}::<fn>_impl` and
+/// `ffi_init.rs`. With `jvm_init` the latter also holds `initialize_ffi_callbacks`, which hands
+/// the entry points to Java through j4rs; without it Java has to look the entry points up by
+/// their symbol names, as the bridge benchmarks do with rust/bridge-stub.
+pub fn generate_protobufs(proto_path: &Path, impl_module: &str, jvm_init: bool) {
     let paths: Vec<_> = glob(&format!("{}/**/*.proto", proto_path.display()))
         .expect("Failed to read glob pattern")
         .filter_map(Result::ok)
         .collect();
 
-    let generator = FfiServiceGenerator::new("crate::java::native_callbacks", "crate::proto");
+    let out_dir = std::env::var("OUT_DIR").unwrap();
+    let descriptor_set = build_descriptor_set(&paths, proto_path, Path::new(&out_dir));
+
+    let generator = FfiServiceGenerator::new(
+        impl_module,
+        "crate::proto",
+        FfiOptions::decode(&descriptor_set),
+    );
     let state = generator.get_state();
 
     let mut config = Config::new();
     config.service_generator(Box::new(generator));
-    config.compile_protos(&paths, &[proto_path]).unwrap();
+    config
+        .compile_fds(prost_types::FileDescriptorSet::decode(descriptor_set.as_slice()).unwrap())
+        .unwrap();
 
-    let out_dir = std::env::var("OUT_DIR").unwrap();
     let init_path = PathBuf::from(&out_dir).join("ffi_init.rs");
 
     let state = state.lock().unwrap();
@@ -176,12 +751,12 @@ pub fn setup_protobufs(base: PathBuf) {
 
     writeln!(
         file,
-        r#"/// Frees bytes allocated by FFI functions
+        r#"/// Frees a response spilled by `ffi_write_response`
 ///
 /// # Safety
 ///
-/// - `ptr` must have been returned by an FFI function in this module
-/// - `len` must be the length that was written to `output_len`
+/// - `ptr` must have been spilled by an FFI function in this module
+/// - `len` must be the length that function returned
 /// - The pointer must not have been freed previously
 #[unsafe(no_mangle)]
 pub unsafe extern "C" fn ffi_free_bytes(ptr: *mut u8, len: usize) {{
@@ -192,12 +767,69 @@ pub unsafe extern "C" fn ffi_free_bytes(ptr: *mut u8, len: usize) {{
     }}
 }}
 
+/// Writes a response into the caller-owned output buffer and returns its length.
+///
+/// A response longer than `output_cap` is spilled instead: it is encoded into a buffer owned
+/// by Rust, whose address is written to the start of the output buffer, and the caller frees
+/// it with `ffi_free_bytes` once decoded. The returned length is then larger than `output_cap`,
+/// which tells the caller to read the spilled buffer and grow its own for the next call.
+///
+/// # Safety
+///
+/// - `output_ptr` must be a valid, 8 byte aligned pointer to `output_cap` writable bytes
+pub unsafe fn ffi_write_response(
+    response: &impl prost::Message,
+    output_ptr: *mut u8,
+    output_cap: usize,
+) -> i64 {{
+    let len = response.encoded_len();
+    if len <= output_cap {{
+        let mut output = unsafe {{ std::slice::from_raw_parts_mut(output_ptr, output_cap) }};
+        response.encode_raw(&mut output);
+        return len as i64;
+    }}
+    if output_cap < size_of::<*mut u8>() {{
+        log::error!("FFI output buffer of {{output_cap}} bytes cannot hold a spilled response");
+        return -1;
+    }}
+
+    let spilled = Box::into_raw(response.encode_to_vec().into_boxed_slice()).cast::<u8>();
+    unsafe {{ output_ptr.cast::<*mut u8>().write(spilled) }};
+    len as i64
+}}"#
+    )
+    .unwrap();
+
+    if !jvm_init {
+        return;
+    }
+
+    writeln!(
+        file,
+        r#"
 pub fn initialize_ffi_callbacks(jvm: &j4rs::Jvm) -> anyhow::Result<()> {{
     use j4rs::InvocationArg;"#
     )
     .unwrap();
 
     for service in &state.services {
+        if let Some(init_fn_name) = &service.upcall_init {
+            writeln!(
+                file,
+                r#"
+    // Initialize {0} upcalls
+    let addresses: Vec<i64> = jvm.to_rust(jvm.invoke_static(
+        "{0}",
+        "upcallAddresses",
+        InvocationArg::empty(),
+    )?)?;
+    crate::proto::{1}::{init_fn_name}(addresses);"#,
+                service.java_class, service.module_path
+            )
+            .unwrap();
+            continue;
+        }
+
         writeln!(
             file,
             r#"
@@ -210,10 +842,17 @@ pub fn initialize_ffi_callbacks(jvm: &j4rs::Jvm) -> anyhow::Result<()> {{
         )
         .unwrap();
 
-        for method in &service.methods {
+        // Plain entry points first, then the batch entry points, matching the Java `init` signature
+        let fn_names = service.methods.iter().map(|method| &method.fn_name).chain(
+            service
+                .methods
+                .iter()
+                .filter_map(|method| method.batch_fn_name.as_ref()),
+        );
+        for fn_name in fn_names {
             writeln!(file,
                 "            InvocationArg::try_from(crate::proto::{}::{} as *const () as i64)?.into_primitive()?,",
-                service.module_path, method.fn_name
+                service.module_path, fn_name
             ).unwrap();
         }
 
@@ -230,6 +869,31 @@ pub fn initialize_ffi_callbacks(jvm: &j4rs::Jvm) -> anyhow::Result<()> {{
             service.java_class
         )
         .unwrap();
+
+        if let Some(dispatch) = &service.submission_dispatch {
+            writeln!(
+                file,
+                r#"
+    let ring = crate::java::submission_ring::SubmissionRing::start(
+        crate::proto::{1}::{dispatch},
+    )?;
+    jvm.invoke_static(
+        "{0}",
+        "initSubmissionRing",
+        &[
+            InvocationArg::try_from(std::ptr::from_ref(ring) as i64)?.into_primitive()?,
+            InvocationArg::try_from(ring.memory() as i64)?.into_primitive()?,
+            InvocationArg::try_from(ring.capacity() as i64)?.into_primitive()?,
+            InvocationArg::try_from(
+                crate::java::submission_ring::ffi_submission_ring_doorbell as *const () as i64,
+            )?
+            .into_primitive()?,
+        ],
+    )?;"#,
+                service.java_class, service.module_path
+            )
+            .unwrap();
+        }
     }
 
     writeln!(
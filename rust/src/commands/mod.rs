@@ -11,15 +11,18 @@ use pumpkin::{
 use pumpkin_protocol::java::client::play::{
     ArgumentType, StringProtoArgBehavior, SuggestionProviders,
 };
-use tokio::sync::{mpsc, oneshot};
+use tokio::sync::oneshot;
 
-use crate::java::jvm::commands::{JvmCommand, Location, Rotation};
+use crate::java::jvm::{
+    commands::{JvmCommand, Location, Rotation},
+    lanes::LaneSender,
+};
 
 const ARG_ANY: &str = "any";
 
 pub struct JavaCommandExecutor {
     pub cmd_name: String,
-    pub command_tx: mpsc::Sender<JvmCommand>,
+    pub command_tx: LaneSender,
 }
 
 #[derive(Clone)]
@@ -30,7 +33,7 @@ pub enum SimpleCommandSender {
 }
 
 pub struct AnyCommandNode {
-    command_tx: mpsc::Sender<JvmCommand>,
+    command_tx: LaneSender,
 }
 
 impl GetClientSideArgParser for AnyCommandNode {
@@ -149,7 +152,7 @@ impl CommandExecutor for JavaCommandExecutor {
 
 pub fn init_java_command(
     cmd_name: impl Into<String>,
-    command_tx: mpsc::Sender<JvmCommand>,
+    command_tx: LaneSender,
     names: impl IntoIterator<Item: Into<String>>,
     description: impl Into<Cow<'static, str>>,
 ) -> CommandTree {
@@ -0,0 +1,98 @@
+//! Records every event fired into the JVM, so a session can be replayed offline against the
+//! same plugins (see `EventReplay` in java/bridge-bench).
+//!
+//! Enabled by pointing `PATCHBUKKIT_CAPTURE_EVENTS` at the file to write. The file holds
+//! length-delimited `CapturedEvent`s. Every event is handed to the OS in one write as it is
+//! recorded, so a capture of a server that crashed or was killed holds every event up to the
+//! last one, which is when a capture is wanted most.
+//!
+//! Events are fired once per priority band and JVM lane, so the lane of every plugin is
+//! recorded too. The replay pins the plugins to the same lanes, which runs every listener once
+//! per band of an event, as it ran live.
+
+use std::{
+    fs::File,
+    io::{Seek, SeekFrom, Write},
+    path::PathBuf,
+    time::Instant,
+};
+
+use prost::Message;
+
+use crate::proto::patchbukkit::events::{
+    CapturedEvent, FireEventRequest, LaneAssignment, captured_event::Record,
+};
+
+pub const CAPTURE_PATH_VARIABLE: &str = "PATCHBUKKIT_CAPTURE_EVENTS";
+
+pub struct EventCapture {
+    file: File,
+    /// Length of the records written in full, the file is cut back to it after a failed write
+    written: u64,
+    /// Reused for encoding every record
+    buffer: Vec<u8>,
+    started: Instant,
+}
+
+impl EventCapture {
+    /// Starts a capture if `PATCHBUKKIT_CAPTURE_EVENTS` is set.
+    #[must_use]
+    pub fn from_env() -> Option<Self> {
+        let path = PathBuf::from(std::env::var_os(CAPTURE_PATH_VARIABLE)?);
+        match File::create(&path) {
+            Ok(file) => {
+                log::info!("Capturing fired events to {}", path.display());
+                Some(Self {
+                    file,
+                    written: 0,
+                    buffer: Vec::new(),
+                    started: Instant::now(),
+                })
+            }
+            Err(e) => {
+                log::error!("Failed to create event capture {}: {e}", path.display());
+                None
+            }
+        }
+    }
+
+    pub fn record(&mut self, request: &FireEventRequest) {
+        self.write(Record::Request(request.clone()));
+    }
+
+    /// Records the lane a plugin was pinned to, before any of its events.
+    pub fn record_lane(&mut self, plugin: &str, lane: usize) {
+        self.write(Record::LaneAssignment(LaneAssignment {
+            plugin: plugin.to_string(),
+            lane: lane as i32,
+        }));
+    }
+
+    fn write(&mut self, record: Record) {
+        let captured = CapturedEvent {
+            timestamp_nanos: u64::try_from(self.started.elapsed().as_nanos()).unwrap_or(u64::MAX),
+            record: Some(record),
+        };
+
+        self.buffer.clear();
+        if let Err(e) = captured.encode_length_delimited(&mut self.buffer) {
+            log::error!("Failed to encode captured event: {e}");
+            return;
+        }
+
+        match self.file.write_all(&self.buffer) {
+            Ok(()) => self.written += self.buffer.len() as u64,
+            Err(e) => {
+                log::error!("Failed to capture event: {e}");
+                // Leaves no partial record behind for the replay to stumble over
+                if let Err(e) = self
+                    .file
+                    .set_len(self.written)
+                    .and_then(|()| self.file.seek(SeekFrom::Start(self.written)))
+                {
+                    log::error!("Failed to cut the capture back to its last event: {e}");
+                }
+            }
+        }
+    }
+}
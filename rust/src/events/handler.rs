@@ -1,14 +1,15 @@
 use std::marker::PhantomData;
-use std::str::FromStr;
 use std::sync::Arc;
 
 use pumpkin::entity::player::Player;
 use pumpkin::plugin::{BoxFuture, Cancellable, EventHandler, Payload};
 use pumpkin::server::Server;
 use pumpkin_api_macros::with_runtime;
-use tokio::sync::{mpsc, oneshot};
+use tokio::sync::mpsc::error::TrySendError;
+use tokio::sync::oneshot;
 
-use crate::java::jvm::commands::JvmCommand;
+use crate::events::interest;
+use crate::java::jvm::{commands::JvmCommand, lanes::LaneSender, metrics, watchdog};
 use crate::proto::patchbukkit::common::Uuid;
 use crate::proto::patchbukkit::events::event::Data;
 use crate::proto::patchbukkit::events::{Event, PlayerJoinEvent};
@@ -25,6 +26,7 @@ pub struct JvmEventPayload {
 
 pub trait PatchBukkitEvent {
     fn to_payload(&self, server: Arc<Server>) -> JvmEventPayload;
+    /// Applies the fields a listener changed, `data` only has those set.
     fn apply_modifications(&mut self, server: &Arc<Server>, data: Data) -> Option<()>;
 }
 
@@ -33,10 +35,8 @@ impl PatchBukkitEvent for pumpkin::plugin::player::player_join::PlayerJoinEvent
         JvmEventPayload {
             event: Event {
                 data: Some(Data::PlayerJoin(PlayerJoinEvent {
-                    player_uuid: Some(Uuid {
-                        value: self.player.gameprofile.id.to_string(),
-                    }),
-                    join_message: serde_json::to_string(&self.join_message).unwrap(),
+                    player_uuid: Some(Uuid::from(self.player.gameprofile.id)),
+                    join_message: Some(serde_json::to_string(&self.join_message).unwrap()),
                 })),
             },
             context: EventContext {
@@ -46,11 +46,12 @@ impl PatchBukkitEvent for pumpkin::plugin::player::player_join::PlayerJoinEvent
         }
     }
 
-    fn apply_modifications(&mut self, server: &Arc<Server>, data: Data) -> Option<()> {
+    fn apply_modifications(&mut self, _server: &Arc<Server>, data: Data) -> Option<()> {
         match data {
             Data::PlayerJoin(event) => {
-                self.join_message = serde_json::from_str(&event.join_message).ok()?;
-                server.get_player_by_uuid(uuid::Uuid::from_str(&event.player_uuid?.value).ok()?)?;
+                if let Some(join_message) = event.join_message {
+                    self.join_message = serde_json::from_str(&join_message).ok()?;
+                }
             }
         }
 
@@ -58,17 +59,33 @@ impl PatchBukkitEvent for pumpkin::plugin::player::player_join::PlayerJoinEvent
     }
 }
 
+/// Runs the Java listeners in one Bukkit priority band of every plugin on a JVM lane, in a
+/// single trip to that lane. Skips the trip while the lane has no listener of an enabled
+/// plugin in the band.
+///
+/// Registered as blocking for every band but MONITOR. MONITOR listeners cannot change the
+/// event, so that band is only queued to the lane and Pumpkin never waits on it. While the
+/// lane's queue for it is full, MONITOR events are dropped and counted in the JVM metrics.
 pub struct PatchBukkitEventHandler<E: PatchBukkitEvent> {
-    plugin_name: String,
-    command_tx: mpsc::Sender<JvmCommand>,
+    interest_slot: usize,
+    lane: usize,
+    priority_band: i32,
+    command_tx: LaneSender,
     _phantom: PhantomData<E>,
 }
 
 impl<E: PatchBukkitEvent> PatchBukkitEventHandler<E> {
     #[must_use]
-    pub const fn new(plugin_name: String, command_tx: mpsc::Sender<JvmCommand>) -> Self {
+    pub const fn new(
+        interest_slot: usize,
+        lane: usize,
+        priority_band: i32,
+        command_tx: LaneSender,
+    ) -> Self {
         Self {
-            plugin_name,
+            interest_slot,
+            lane,
+            priority_band,
             command_tx,
             _phantom: PhantomData,
         }
@@ -80,6 +97,35 @@ impl<E> EventHandler<E> for PatchBukkitEventHandler<E>
 where
     E: PatchBukkitEvent + Payload + Cancellable + 'static,
 {
+    fn handle<'a>(&'a self, server: &'a Arc<Server>, event: &'a E) -> BoxFuture<'a, ()> {
+        Box::pin(async move {
+            if !interest::is_observed(self.interest_slot, self.lane, self.priority_band) {
+                return;
+            }
+
+            let command = JvmCommand::ObserveEvent {
+                payload: event.to_payload(server.clone()),
+                priority_band: self.priority_band,
+                cancelled: event.cancelled(),
+            };
+
+            match self.command_tx.try_send(command) {
+                Ok(()) => {}
+                Err(TrySendError::Full(command)) => {
+                    // Neither the tick nor a pile of tasks waits for room in the queue
+                    metrics::dropped(command.kind());
+                    log::debug!(
+                        "Dropped a MONITOR event, the queue of JVM lane {} is full",
+                        self.lane
+                    );
+                }
+                Err(TrySendError::Closed(_)) => {
+                    log::error!("Failed to send event to JVM lane: channel closed");
+                }
+            }
+        })
+    }
+
     fn handle_blocking<'a>(
         &'a self,
         server: &'a Arc<Server>,
@@ -88,26 +134,48 @@ where
         let command_tx = self.command_tx.clone();
 
         Box::pin(async move {
+            if !interest::is_observed(self.interest_slot, self.lane, self.priority_band) {
+                return;
+            }
+
             let (tx, rx) = oneshot::channel();
             if let Err(e) = command_tx
                 .send(JvmCommand::FireEvent {
                     payload: event.to_payload(server.clone()),
                     respond_to: tx,
-                    plugin: self.plugin_name.clone(),
+                    priority_band: self.priority_band,
+                    cancelled: event.cancelled(),
                 })
                 .await
             {
-                log::error!("Failed to send event to JVM worker: {e}");
+                log::error!("Failed to send event to JVM lane: {e}");
                 return;
             }
 
-            match rx.await {
+            // Waits for as long as the lane takes, unless the watchdog is to answer for it
+            let response = match watchdog::default_response_after() {
+                Some(limit) => match tokio::time::timeout(limit, rx).await {
+                    Ok(response) => response,
+                    Err(_) => {
+                        log::warn!(
+                            "JVM lane {} did not answer an event within {limit:?}, going on without it",
+                            self.lane
+                        );
+                        return;
+                    }
+                },
+                None => rx.await,
+            };
+
+            match response {
                 Ok(response) => {
                     event.set_cancelled(response.cancelled);
-                    event.apply_modifications(server, response.data.unwrap().data.unwrap());
+                    if let Some(Event { data: Some(data) }) = response.data {
+                        event.apply_modifications(server, data);
+                    }
                 }
                 Err(_) => {
-                    log::warn!("JVM worker dropped response channel for event");
+                    log::warn!("JVM lane dropped response channel for event");
                 }
             }
         })
@@ -0,0 +1,53 @@
+//! Which priority bands of each Bukkit event type have a listener of an enabled plugin, per
+//! JVM lane.
+//!
+//! Java rewrites the slots of an event type whenever its listeners are registered or
+//! unregistered and whenever a plugin is enabled or disabled (see
+//! `org.patchbukkit.events.ListenerInterest`). Pumpkin handlers check their slot before
+//! building a payload, so an event nobody listens to never leaves Pumpkin's thread. Every
+//! event type has one slot per lane, and bit `n` of a slot is set when a plugin on the lane
+//! has a listener in band `n`.
+//!
+//! A stale set bit only costs a trip to the JVM, which clears it again once it finds nobody
+//! in the band. A stale clear bit would drop events, so Java updates the table before a
+//! registration returns.
+
+use std::sync::atomic::{AtomicU32, Ordering};
+
+use j4rs::{InvocationArg, Jvm};
+
+use crate::java::jvm::lanes::MAX_LANES;
+
+/// Bukkit event types Pumpkin handlers can fire, in slot order. Java also takes these as the
+/// event types `NativeBridge.CallEvent` hands to Pumpkin, anything else it dispatches itself.
+pub const EVENT_TYPES: &[&str] = &["org.bukkit.event.player.PlayerJoinEvent"];
+
+static INTEREST: [AtomicU32; EVENT_TYPES.len() * MAX_LANES] =
+    [const { AtomicU32::new(0) }; EVENT_TYPES.len() * MAX_LANES];
+
+#[must_use]
+pub fn slot(event_type: &str) -> Option<usize> {
+    EVENT_TYPES.iter().position(|known| *known == event_type)
+}
+
+/// Whether any enabled plugin on `lane` listens to the event type of `slot` in
+/// `priority_band`.
+#[must_use]
+pub fn is_observed(slot: usize, lane: usize, priority_band: i32) -> bool {
+    INTEREST[slot * MAX_LANES + lane].load(Ordering::Acquire) & (1 << priority_band) != 0
+}
+
+/// Hands the table to Java. Must run before plugins are loaded, as registrations made before
+/// would not be reflected in it.
+pub fn initialize_interest_table(jvm: &Jvm) -> anyhow::Result<()> {
+    jvm.invoke_static(
+        "org.patchbukkit.events.ListenerInterest",
+        "init",
+        &[
+            InvocationArg::try_from(INTEREST.as_ptr() as i64)?.into_primitive()?,
+            InvocationArg::try_from(EVENT_TYPES.join(","))?,
+            InvocationArg::try_from(MAX_LANES as i32)?.into_primitive()?,
+        ],
+    )?;
+    Ok(())
+}
@@ -1 +1,3 @@
+pub mod capture;
 pub mod handler;
+pub mod interest;
@@ -1,9 +1,9 @@
-use std::{path::PathBuf, sync::Arc};
+use std::{path::PathBuf, sync::Arc, time::Duration};
 
 use anyhow::Result;
 use pumpkin::{command::dispatcher::CommandError, plugin::Context};
 use pumpkin_protocol::java::client::play::CommandSuggestion;
-use tokio::sync::{mpsc, oneshot};
+use tokio::sync::oneshot;
 use uuid::Uuid;
 
 use crate::{
@@ -11,6 +11,10 @@ use crate::{
     proto::patchbukkit::events::FireEventResponse,
 };
 
+/// How long a tab completion may wait for its lane. The player has typed on by then, so the
+/// suggestions would be stale anyway.
+const TAB_COMPLETE_MAX_WAIT: Duration = Duration::from_secs(1);
+
 pub enum LoadPluginResult {
     SuccessfullyLoadedSpigot,
     SuccessfullyLoadedPaper,
@@ -25,7 +29,6 @@ pub enum JvmCommand {
         j4rs_path: PathBuf,
         respond_to: oneshot::Sender<Result<()>>,
         context: Arc<Context>,
-        command_tx: mpsc::Sender<Self>,
     },
     LoadPlugin {
         plugin_path: PathBuf,
@@ -34,7 +37,6 @@ pub enum JvmCommand {
     InstantiateAllPlugins {
         respond_to: oneshot::Sender<Result<()>>,
         server: Arc<Context>,
-        command_tx: mpsc::Sender<Self>,
     },
     EnableAllPlugins {
         respond_to: oneshot::Sender<Result<()>>,
@@ -42,13 +44,22 @@ pub enum JvmCommand {
     DisableAllPlugins {
         respond_to: oneshot::Sender<Result<()>>,
     },
+    /// Stops the JVM worker or a JVM lane, after the commands queued before it
     Shutdown {
         respond_to: oneshot::Sender<Result<()>>,
     },
     FireEvent {
         payload: JvmEventPayload,
-        plugin: String,
-        respond_to: oneshot::Sender<FireEventResponse>, // true = cancelled
+        priority_band: i32,
+        cancelled: bool,
+        respond_to: oneshot::Sender<FireEventResponse>,
+    },
+    /// Fires an event for listeners that cannot change it (Bukkit's MONITOR), nobody waits
+    /// for the outcome.
+    ObserveEvent {
+        payload: JvmEventPayload,
+        priority_band: i32,
+        cancelled: bool,
     },
     TriggerCommand {
         full_command: String,
@@ -63,6 +74,126 @@ pub enum JvmCommand {
     },
 }
 
+/// The queues of a JVM lane, in the order the lane serves them. A lane only takes from a
+/// queue when every queue before it is empty, except that Housekeeping is not passed over
+/// indefinitely (see `lanes::HOUSEKEEPING_STARVATION_BOUND`).
+#[derive(Clone, Copy, Debug, PartialEq, Eq)]
+pub enum PriorityClass {
+    /// Events Pumpkin waits on before it goes on with the tick
+    BlockingEvent,
+    /// Commands run by players or the console
+    Command,
+    /// Suggestions while a player types a command
+    TabComplete,
+    /// Work nobody waits on, like MONITOR events and stopping the lane
+    Housekeeping,
+}
+
+impl PriorityClass {
+    pub const COUNT: usize = 4;
+}
+
+/// Which [`JvmCommand`] variant a command is, what its metrics are kept by.
+#[derive(Clone, Copy, Debug, PartialEq, Eq)]
+pub enum CommandKind {
+    Initialize,
+    LoadPlugin,
+    InstantiateAllPlugins,
+    EnableAllPlugins,
+    DisableAllPlugins,
+    Shutdown,
+    FireEvent,
+    ObserveEvent,
+    TriggerCommand,
+    GetCommandTabComplete,
+}
+
+impl CommandKind {
+    pub const ALL: [Self; 10] = [
+        Self::Initialize,
+        Self::LoadPlugin,
+        Self::InstantiateAllPlugins,
+        Self::EnableAllPlugins,
+        Self::DisableAllPlugins,
+        Self::Shutdown,
+        Self::FireEvent,
+        Self::ObserveEvent,
+        Self::TriggerCommand,
+        Self::GetCommandTabComplete,
+    ];
+    pub const COUNT: usize = Self::ALL.len();
+}
+
+impl JvmCommand {
+    #[must_use]
+    pub const fn kind(&self) -> CommandKind {
+        match self {
+            Self::Initialize { .. } => CommandKind::Initialize,
+            Self::LoadPlugin { .. } => CommandKind::LoadPlugin,
+            Self::InstantiateAllPlugins { .. } => CommandKind::InstantiateAllPlugins,
+            Self::EnableAllPlugins { .. } => CommandKind::EnableAllPlugins,
+            Self::DisableAllPlugins { .. } => CommandKind::DisableAllPlugins,
+            Self::Shutdown { .. } => CommandKind::Shutdown,
+            Self::FireEvent { .. } => CommandKind::FireEvent,
+            Self::ObserveEvent { .. } => CommandKind::ObserveEvent,
+            Self::TriggerCommand { .. } => CommandKind::TriggerCommand,
+            Self::GetCommandTabComplete { .. } => CommandKind::GetCommandTabComplete,
+        }
+    }
+
+    #[must_use]
+    pub const fn priority_class(&self) -> PriorityClass {
+        match self {
+            Self::FireEvent { .. } => PriorityClass::BlockingEvent,
+            Self::TriggerCommand { .. } => PriorityClass::Command,
+            Self::GetCommandTabComplete { .. } => PriorityClass::TabComplete,
+            _ => PriorityClass::Housekeeping,
+        }
+    }
+
+    /// How long the command may wait in a queue before running it is pointless.
+    #[must_use]
+    pub const fn max_queue_wait(&self) -> Option<Duration> {
+        match self {
+            Self::GetCommandTabComplete { .. } => Some(TAB_COMPLETE_MAX_WAIT),
+            _ => None,
+        }
+    }
+
+    /// Whether the caller stopped waiting for the response, for example because Pumpkin
+    /// dropped the event future or the tab completion request. `TriggerCommand` never
+    /// counts, its caller does not wait for the response in the first place.
+    #[must_use]
+    pub fn caller_gave_up(&self) -> bool {
+        match self {
+            Self::FireEvent { respond_to, .. } => respond_to.is_closed(),
+            Self::GetCommandTabComplete { respond_to, .. } => respond_to.is_closed(),
+            _ => false,
+        }
+    }
+
+    /// Drops the command without running it. A caller that still waits gets the response of
+    /// a command that changed nothing, a dropped channel would read as a failure.
+    pub fn abandon(self) {
+        match self {
+            Self::FireEvent {
+                cancelled,
+                respond_to,
+                ..
+            } => {
+                let _ = respond_to.send(FireEventResponse {
+                    cancelled,
+                    data: None,
+                });
+            }
+            Self::GetCommandTabComplete { respond_to, .. } => {
+                let _ = respond_to.send(Ok(None));
+            }
+            _ => {}
+        }
+    }
+}
+
 pub struct Rotation {
     pub yaw: f32,
     pub pitch: f32,
@@ -0,0 +1,442 @@
+//! The threads plugin code runs on.
+//!
+//! Every plugin is pinned to one lane when it is instantiated. Its commands, tab completions
+//! and the priority bands its listeners are in run on that lane's thread, so one plugin never
+//! runs on two threads at once, as Bukkit plugins expect. Plugins on different lanes run in
+//! parallel, and a slow plugin only holds up the plugins sharing its lane.
+//!
+//! Loading, enabling and disabling plugins stays on the JVM worker. The number of lanes is
+//! read from `PATCHBUKKIT_JVM_LANES` and defaults to the available cores, at most four.
+//!
+//! Every lane has one queue per [`PriorityClass`], so a blocking event Pumpkin's tick waits on
+//! never queues up behind tab completions. Housekeeping still gets a turn after every
+//! [`HOUSEKEEPING_STARVATION_BOUND`] commands of the other classes, so a lane that is never
+//! idle keeps delivering MONITOR events. Commands whose caller gave up, or that waited longer
+//! than their class allows, are answered as if they changed nothing instead of run.
+//!
+//! Lanes that are stuck on one command are reported by the [`watchdog`](super::watchdog), and
+//! how long commands queue and run on them is kept in [`metrics`](super::metrics).
+
+use std::{
+    num::NonZeroUsize,
+    sync::Arc,
+    thread,
+    time::Instant,
+};
+
+use j4rs::Jvm;
+use tokio::sync::{
+    mpsc::{
+        self,
+        error::{SendError, TrySendError},
+    },
+    oneshot,
+};
+
+use crate::{
+    java::{
+        jvm::{
+            commands::{CommandKind, JvmCommand, PriorityClass},
+            metrics,
+            watchdog::{self, LaneActivity},
+        },
+        plugin::{command_manager::CommandManager, event_manager::EventManager},
+    },
+    proto::patchbukkit::events::FireEventResponse,
+};
+
+pub const LANES_VARIABLE: &str = "PATCHBUKKIT_JVM_LANES";
+
+/// Most lanes there can be, the listener interest table has room for this many per event type
+pub const MAX_LANES: usize = 8;
+
+const DEFAULT_MAX_LANES: usize = 4;
+
+/// Commands each queue of a lane holds before senders wait, as many as the JVM worker queues
+const LANE_QUEUE_CAPACITY: usize = 100;
+
+/// Commands of the other classes a lane serves in a row before it takes one from Housekeeping
+const HOUSEKEEPING_STARVATION_BOUND: u32 = 32;
+
+/// The queues of every lane, cheap to clone.
+#[derive(Clone)]
+pub struct JvmLanes {
+    senders: Arc<[LaneSender]>,
+}
+
+impl JvmLanes {
+    /// Starts the lane threads. They attach to the JVM when they receive their first command,
+    /// so they can be started before the JVM is.
+    #[must_use]
+    pub fn spawn(event_manager: &EventManager) -> Self {
+        let count = lane_count();
+        let activities: Arc<[LaneActivity]> =
+            (0..count).map(|_| LaneActivity::default()).collect();
+        let senders = (0..count)
+            .map(|lane| {
+                let (sender, queues) = LaneQueues::new();
+                let event_manager = event_manager.clone();
+                let activities = activities.clone();
+                thread::Builder::new()
+                    .name(format!("patchbukkit-jvm-lane-{lane}"))
+                    .spawn(move || JvmLane::new(lane, queues, event_manager, activities).run())
+                    .expect("Failed to spawn JVM lane thread");
+                sender
+            })
+            .collect();
+        watchdog::spawn(Arc::downgrade(&activities));
+        metrics::spawn_reporter(Arc::downgrade(&activities));
+
+        log::info!("Running plugins on {count} JVM lanes");
+        Self { senders }
+    }
+
+    #[must_use]
+    pub fn count(&self) -> usize {
+        self.senders.len()
+    }
+
+    /// The queue of a lane. Lane numbers past the last lane wrap around.
+    #[must_use]
+    pub fn sender(&self, lane: usize) -> &LaneSender {
+        &self.senders[lane % self.senders.len()]
+    }
+
+    /// Stops every lane once every command queued before has run.
+    pub async fn shutdown(&self) {
+        for sender in self.senders.iter() {
+            let (tx, rx) = oneshot::channel();
+            if sender
+                .send(JvmCommand::Shutdown { respond_to: tx })
+                .await
+                .is_ok()
+            {
+                let _ = rx.await;
+            }
+        }
+    }
+}
+
+/// Sends commands to one lane, each into the queue of its priority class.
+#[derive(Clone)]
+pub struct LaneSender {
+    queues: [mpsc::Sender<QueuedCommand>; PriorityClass::COUNT],
+}
+
+impl LaneSender {
+    /// Waits for room in the command's queue.
+    pub async fn send(&self, command: JvmCommand) -> Result<(), SendError<JvmCommand>> {
+        let queued = QueuedCommand::new(command);
+        let kind = queued.kind;
+        self.queues[queued.class as usize]
+            .send(queued)
+            .await
+            .map_err(|SendError(queued)| {
+                metrics::not_queued(kind);
+                SendError(queued.command)
+            })
+    }
+
+    pub fn try_send(&self, command: JvmCommand) -> Result<(), TrySendError<JvmCommand>> {
+        let queued = QueuedCommand::new(command);
+        let kind = queued.kind;
+        self.queues[queued.class as usize]
+            .try_send(queued)
+            .map_err(|e| {
+                metrics::not_queued(kind);
+                match e {
+                    TrySendError::Full(queued) => TrySendError::Full(queued.command),
+                    TrySendError::Closed(queued) => TrySendError::Closed(queued.command),
+                }
+            })
+    }
+}
+
+struct QueuedCommand {
+    command: JvmCommand,
+    kind: CommandKind,
+    class: PriorityClass,
+    enqueued: Instant,
+    deadline: Option<Instant>,
+}
+
+impl QueuedCommand {
+    /// Counts the command as queued in the metrics, senders take that back if it was not.
+    fn new(command: JvmCommand) -> Self {
+        let kind = command.kind();
+        metrics::queued(kind);
+        let enqueued = Instant::now();
+        Self {
+            kind,
+            class: command.priority_class(),
+            enqueued,
+            deadline: command.max_queue_wait().map(|max_wait| enqueued + max_wait),
+            command,
+        }
+    }
+
+    fn is_stale(&self) -> bool {
+        self.deadline.is_some_and(|deadline| Instant::now() > deadline)
+            || self.command.caller_gave_up()
+    }
+}
+
+/// The receiving ends of a lane's queues, see [`LaneSender`].
+struct LaneQueues {
+    queues: [mpsc::Receiver<QueuedCommand>; PriorityClass::COUNT],
+    /// Commands served from other queues since the last one from Housekeeping
+    served_since_housekeeping: u32,
+}
+
+impl LaneQueues {
+    fn new() -> (LaneSender, Self) {
+        let (blocking_events_tx, blocking_events_rx) = mpsc::channel(LANE_QUEUE_CAPACITY);
+        let (commands_tx, commands_rx) = mpsc::channel(LANE_QUEUE_CAPACITY);
+        let (tab_completions_tx, tab_completions_rx) = mpsc::channel(LANE_QUEUE_CAPACITY);
+        let (housekeeping_tx, housekeeping_rx) = mpsc::channel(LANE_QUEUE_CAPACITY);
+
+        (
+            LaneSender {
+                queues: [
+                    blocking_events_tx,
+                    commands_tx,
+                    tab_completions_tx,
+                    housekeeping_tx,
+                ],
+            },
+            Self {
+                queues: [
+                    blocking_events_rx,
+                    commands_rx,
+                    tab_completions_rx,
+                    housekeeping_rx,
+                ],
+                served_since_housekeeping: 0,
+            },
+        )
+    }
+
+    /// Waits for the next command, from the first queue in priority order that has one,
+    /// unless Housekeeping has waited out its bound. Returns `None` once every queue is closed
+    /// and empty.
+    async fn next(&mut self) -> Option<QueuedCommand> {
+        let [blocking_events, commands, tab_completions, housekeeping] = &mut self.queues;
+
+        if self.served_since_housekeeping >= HOUSEKEEPING_STARVATION_BOUND {
+            // Whatever is queued after this gets a whole bound to wait again
+            self.served_since_housekeeping = 0;
+            if let Ok(queued) = housekeeping.try_recv() {
+                return Some(queued);
+            }
+        }
+
+        let queued = tokio::select! {
+            biased;
+            Some(queued) = blocking_events.recv() => queued,
+            Some(queued) = commands.recv() => queued,
+            Some(queued) = tab_completions.recv() => queued,
+            Some(queued) = housekeeping.recv() => queued,
+            else => return None,
+        };
+
+        if queued.class == PriorityClass::Housekeeping {
+            self.served_since_housekeeping = 0;
+        } else {
+            self.served_since_housekeeping += 1;
+        }
+        Some(queued)
+    }
+
+    /// Refuses new commands, the ones already queued are still handed out by [`Self::next`].
+    fn close(&mut self) {
+        for queue in &mut self.queues {
+            queue.close();
+        }
+    }
+}
+
+fn lane_count() -> usize {
+    let configured = std::env::var(LANES_VARIABLE)
+        .ok()
+        .and_then(|value| match value.parse::<usize>() {
+            Ok(lanes) if lanes > 0 => Some(lanes),
+            _ => {
+                log::warn!("Ignoring {LANES_VARIABLE}={value}, expected a positive number");
+                None
+            }
+        });
+
+    configured
+        .unwrap_or_else(|| {
+            thread::available_parallelism()
+                .map_or(1, NonZeroUsize::get)
+                .min(DEFAULT_MAX_LANES)
+        })
+        .min(MAX_LANES)
+}
+
+/// Runs the commands of the plugins pinned to one lane, one after the other.
+struct JvmLane {
+    lane: usize,
+    queues: LaneQueues,
+    event_manager: EventManager,
+    command_manager: CommandManager,
+    /// Every lane's, this lane's is at `lane`
+    activities: Arc<[LaneActivity]>,
+}
+
+impl JvmLane {
+    const fn new(
+        lane: usize,
+        queues: LaneQueues,
+        event_manager: EventManager,
+        activities: Arc<[LaneActivity]>,
+    ) -> Self {
+        Self {
+            lane,
+            queues,
+            event_manager,
+            command_manager: CommandManager::new(),
+            activities,
+        }
+    }
+
+    fn run(mut self) {
+        let runtime = match tokio::runtime::Builder::new_current_thread().build() {
+            Ok(runtime) => runtime,
+            Err(e) => {
+                log::error!("JVM lane {} failed to start: {e}", self.lane);
+                return;
+            }
+        };
+        let mut attached: Option<Jvm> = None;
+        let mut shutdown = None;
+
+        // The runtime only waits for the next command. Commands run outside of it, as native
+        // callbacks block_in_place, which a current-thread runtime does not allow.
+        while let Some(queued) = runtime.block_on(self.queues.next()) {
+            metrics::dequeued(queued.kind, queued.enqueued.elapsed());
+            if queued.is_stale() {
+                log::debug!(
+                    "JVM lane {} dropped a stale {:?} command",
+                    self.lane,
+                    queued.class
+                );
+                queued.command.abandon();
+                continue;
+            }
+
+            let (kind, class) = (queued.kind, queued.class);
+            let command = queued.command;
+            if let JvmCommand::Shutdown { respond_to } = command {
+                // Housekeeping may have been served ahead of commands queued before the
+                // shutdown, those still run before the lane answers it
+                self.queues.close();
+                shutdown = Some(respond_to);
+                continue;
+            }
+
+            let jvm = match attached {
+                Some(ref jvm) => jvm,
+                None => match Jvm::attach_thread() {
+                    Ok(jvm) => {
+                        if let Err(e) = watchdog::register_lane_thread(&jvm, self.lane) {
+                            log::error!(
+                                "JVM lane {} failed to register with the watchdog: {e}",
+                                self.lane
+                            );
+                        }
+                        attached.insert(jvm)
+                    }
+                    Err(e) => {
+                        log::error!("JVM lane {} failed to attach to the JVM: {e}", self.lane);
+                        continue;
+                    }
+                },
+            };
+
+            let started = Instant::now();
+            self.activities[self.lane].begin(class);
+            self.run_command(jvm, command);
+            self.activities[self.lane].end();
+            metrics::ran(kind, started.elapsed());
+        }
+
+        if let Some(respond_to) = shutdown {
+            let _ = respond_to.send(Ok(()));
+        }
+        log::info!("JVM lane {} exited", self.lane);
+    }
+
+    fn run_command(&mut self, jvm: &Jvm, command: JvmCommand) {
+        match command {
+            JvmCommand::FireEvent {
+                respond_to,
+                priority_band,
+                cancelled,
+                payload,
+            } => {
+                let response = match self.event_manager.fire_event(
+                    jvm,
+                    payload,
+                    self.lane,
+                    priority_band,
+                    cancelled,
+                ) {
+                    Ok(response) => response,
+                    Err(e) => {
+                        log::error!("Failed to fire event: {e}");
+                        FireEventResponse {
+                            cancelled,
+                            data: None,
+                        }
+                    }
+                };
+
+                let _ = respond_to.send(response);
+            }
+            JvmCommand::ObserveEvent {
+                payload,
+                priority_band,
+                cancelled,
+            } => {
+                if let Err(e) =
+                    self.event_manager
+                        .fire_event(jvm, payload, self.lane, priority_band, cancelled)
+                {
+                    log::error!("Failed to fire event: {e}");
+                }
+            }
+            JvmCommand::TriggerCommand {
+                full_command,
+                command_sender,
+                respond_to,
+            } => {
+                let result = self
+                    .command_manager
+                    .trigger_command(jvm, full_command, command_sender);
+
+                let _ = respond_to.send(result);
+            }
+            JvmCommand::GetCommandTabComplete {
+                command_sender,
+                full_command,
+                respond_to,
+                location,
+            } => {
+                let result = self.command_manager.get_tab_complete(
+                    jvm,
+                    command_sender,
+                    full_command,
+                    location,
+                );
+
+                let _ = respond_to.send(result);
+            }
+            _ => log::error!(
+                "JVM lane {} received a command only the JVM worker runs",
+                self.lane
+            ),
+        }
+    }
+}
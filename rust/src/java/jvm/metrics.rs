@@ -0,0 +1,267 @@
+//! Where the time of JVM commands goes.
+//!
+//! For every kind of [`JvmCommand`](super::commands::JvmCommand) this keeps how long commands
+//! waited in a lane's queue, how long they ran, how many commands of their kind were queued
+//! ahead of them and how many were dropped because their queue was full. Slow events can then be told apart into ones that queued behind
+//! other work and ones that ran slow plugin code. Everything is kept in atomic histograms, so
+//! lanes record without ever waiting on each other or on a reader.
+//!
+//! Java reads the histograms through the `GetJvmMetrics` bridge call. A summary of every
+//! interval of `PATCHBUKKIT_JVM_METRICS_INTERVAL_SECS` (a minute by default, 0 turns it off)
+//! is also logged. Commands of the JVM worker are only timed while they run, they are not
+//! queued behind anything worth measuring.
+
+use std::{
+    fmt::Write,
+    sync::{
+        Weak,
+        atomic::{AtomicU64, Ordering},
+    },
+    thread,
+    time::Duration,
+};
+
+use crate::java::jvm::commands::CommandKind;
+
+pub const METRICS_INTERVAL_VARIABLE: &str = "PATCHBUKKIT_JVM_METRICS_INTERVAL_SECS";
+
+const DEFAULT_METRICS_INTERVAL: Duration = Duration::from_secs(60);
+
+/// Bucket 0 counts zeros and bucket i the values from 2^(i-1) up to 2^i - 1, the last bucket
+/// also counts everything larger. In microseconds that is up to half an hour.
+pub const HISTOGRAM_BUCKETS: usize = 32;
+
+static COMMANDS: [CommandMetrics; CommandKind::COUNT] =
+    [const { CommandMetrics::new() }; CommandKind::COUNT];
+
+struct CommandMetrics {
+    queue_wait_micros: Histogram,
+    service_micros: Histogram,
+    queue_depth: Histogram,
+    queued: AtomicU64,
+    dropped: AtomicU64,
+}
+
+impl CommandMetrics {
+    const fn new() -> Self {
+        Self {
+            queue_wait_micros: Histogram::new(),
+            service_micros: Histogram::new(),
+            queue_depth: Histogram::new(),
+            queued: AtomicU64::new(0),
+            dropped: AtomicU64::new(0),
+        }
+    }
+}
+
+struct Histogram {
+    buckets: [AtomicU64; HISTOGRAM_BUCKETS],
+    sum: AtomicU64,
+    max: AtomicU64,
+}
+
+impl Histogram {
+    const fn new() -> Self {
+        Self {
+            buckets: [const { AtomicU64::new(0) }; HISTOGRAM_BUCKETS],
+            sum: AtomicU64::new(0),
+            max: AtomicU64::new(0),
+        }
+    }
+
+    fn record(&self, value: u64) {
+        let bucket = (u64::BITS - value.leading_zeros()) as usize;
+        self.buckets[bucket.min(HISTOGRAM_BUCKETS - 1)].fetch_add(1, Ordering::Relaxed);
+        self.sum.fetch_add(value, Ordering::Relaxed);
+        self.max.fetch_max(value, Ordering::Relaxed);
+    }
+
+    fn snapshot(&self) -> HistogramSnapshot {
+        HistogramSnapshot {
+            buckets: std::array::from_fn(|bucket| self.buckets[bucket].load(Ordering::Relaxed)),
+            sum: self.sum.load(Ordering::Relaxed),
+            max: self.max.load(Ordering::Relaxed),
+        }
+    }
+}
+
+fn micros(duration: Duration) -> u64 {
+    u64::try_from(duration.as_micros()).unwrap_or(u64::MAX)
+}
+
+/// A command of the kind is about to be queued for a lane.
+pub fn queued(kind: CommandKind) {
+    let metrics = &COMMANDS[kind as usize];
+    let ahead = metrics.queued.fetch_add(1, Ordering::Relaxed);
+    metrics.queue_depth.record(ahead);
+}
+
+/// A command counted by [`queued`] did not make it into the queue after all.
+pub fn not_queued(kind: CommandKind) {
+    COMMANDS[kind as usize].queued.fetch_sub(1, Ordering::Relaxed);
+}
+
+/// A command was given up on instead of waiting for room in its full queue.
+pub fn dropped(kind: CommandKind) {
+    COMMANDS[kind as usize].dropped.fetch_add(1, Ordering::Relaxed);
+}
+
+/// A lane took a command counted by [`queued`] off its queue.
+pub fn dequeued(kind: CommandKind, waited: Duration) {
+    let metrics = &COMMANDS[kind as usize];
+    metrics.queued.fetch_sub(1, Ordering::Relaxed);
+    metrics.queue_wait_micros.record(micros(waited));
+}
+
+/// A command finished running on a lane or the JVM worker.
+pub fn ran(kind: CommandKind, took: Duration) {
+    COMMANDS[kind as usize].service_micros.record(micros(took));
+}
+
+/// What was recorded for one kind of command, at one point in time.
+pub struct CommandSnapshot {
+    pub kind: CommandKind,
+    pub queue_wait_micros: HistogramSnapshot,
+    pub service_micros: HistogramSnapshot,
+    pub queue_depth: HistogramSnapshot,
+    pub queued: u64,
+    pub dropped: u64,
+}
+
+#[derive(Clone, Copy)]
+pub struct HistogramSnapshot {
+    pub buckets: [u64; HISTOGRAM_BUCKETS],
+    pub sum: u64,
+    pub max: u64,
+}
+
+impl HistogramSnapshot {
+    #[must_use]
+    pub fn count(&self) -> u64 {
+        self.buckets.iter().sum()
+    }
+
+    /// What was recorded after `earlier`. The maximum cannot be told apart, it stays the
+    /// maximum since the start.
+    #[must_use]
+    fn since(&self, earlier: &Self) -> Self {
+        Self {
+            buckets: std::array::from_fn(|bucket| self.buckets[bucket] - earlier.buckets[bucket]),
+            sum: self.sum - earlier.sum,
+            max: self.max,
+        }
+    }
+
+    /// The largest value the bucket holding the quantile `q` can hold, or the maximum if
+    /// that is smaller.
+    #[must_use]
+    fn quantile(&self, q: f64) -> u64 {
+        let rank = (self.count() as f64 * q).ceil().max(1.0) as u64;
+        let mut seen = 0;
+        for (bucket, count) in self.buckets.iter().enumerate() {
+            seen += count;
+            if seen >= rank {
+                let upper = if bucket == 0 { 0 } else { (1u64 << bucket) - 1 };
+                return upper.min(self.max);
+            }
+        }
+        self.max
+    }
+}
+
+/// Everything recorded since the server started.
+#[must_use]
+pub fn snapshot() -> Vec<CommandSnapshot> {
+    CommandKind::ALL
+        .iter()
+        .map(|&kind| {
+            let metrics = &COMMANDS[kind as usize];
+            CommandSnapshot {
+                kind,
+                queue_wait_micros: metrics.queue_wait_micros.snapshot(),
+                service_micros: metrics.service_micros.snapshot(),
+                queue_depth: metrics.queue_depth.snapshot(),
+                queued: metrics.queued.load(Ordering::Relaxed),
+                dropped: metrics.dropped.load(Ordering::Relaxed),
+            }
+        })
+        .collect()
+}
+
+/// Starts logging a summary every interval. The reporter stops along with `lanes`.
+pub fn spawn_reporter<T: ?Sized + Send + Sync + 'static>(lanes: Weak<T>) {
+    let interval = match std::env::var(METRICS_INTERVAL_VARIABLE) {
+        Ok(value) => match value.parse::<u64>() {
+            Ok(0) => return,
+            Ok(secs) => Duration::from_secs(secs),
+            Err(_) => {
+                log::warn!(
+                    "Ignoring {METRICS_INTERVAL_VARIABLE}={value}, expected a number of seconds"
+                );
+                DEFAULT_METRICS_INTERVAL
+            }
+        },
+        Err(_) => DEFAULT_METRICS_INTERVAL,
+    };
+
+    thread::Builder::new()
+        .name("patchbukkit-jvm-metrics".to_string())
+        .spawn(move || {
+            let mut previous = snapshot();
+            loop {
+                thread::sleep(interval);
+                if lanes.strong_count() == 0 {
+                    break;
+                }
+
+                let current = snapshot();
+                for (now, before) in current.iter().zip(&previous) {
+                    if let Some(summary) = summarize(now, before) {
+                        log::info!("{summary}");
+                    }
+                }
+                previous = current;
+            }
+        })
+        .expect("Failed to spawn JVM metrics thread");
+}
+
+/// One line on what changed for a kind of command between two snapshots, if anything did.
+fn summarize(now: &CommandSnapshot, before: &CommandSnapshot) -> Option<String> {
+    let waited = now.queue_wait_micros.since(&before.queue_wait_micros);
+    let ran = now.service_micros.since(&before.service_micros);
+    let depth = now.queue_depth.since(&before.queue_depth);
+    let dropped = now.dropped - before.dropped;
+
+    let count = waited.count().max(ran.count());
+    if count == 0 && dropped == 0 {
+        return None;
+    }
+
+    let mut summary = format!("JVM {:?}: {count} commands", now.kind);
+    let percentiles = |histogram: &HistogramSnapshot| {
+        format!(
+            "p50 {:?}, p99 {:?}",
+            Duration::from_micros(histogram.quantile(0.5)),
+            Duration::from_micros(histogram.quantile(0.99))
+        )
+    };
+    if waited.count() > 0 {
+        let _ = write!(summary, ", queued {}", percentiles(&waited));
+    }
+    if ran.count() > 0 {
+        let _ = write!(summary, ", ran {}", percentiles(&ran));
+    }
+    if depth.count() > 0 {
+        let _ = write!(
+            summary,
+            ", {} ahead at p99, {} queued now",
+            depth.quantile(0.99),
+            now.queued
+        );
+    }
+    if dropped > 0 {
+        let _ = write!(summary, ", {dropped} dropped on a full queue");
+    }
+    Some(summary)
+}
@@ -1,2 +1,5 @@
 pub mod commands;
+pub mod lanes;
+pub mod metrics;
+pub mod watchdog;
 pub mod worker;
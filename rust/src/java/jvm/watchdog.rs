@@ -0,0 +1,160 @@
+//! Notices JVM lanes that are stuck on one command, usually a plugin blocking in a listener.
+//!
+//! Every lane records when its current command started. A watchdog thread checks the lanes
+//! a few times per threshold, and once a command has run longer than the threshold it logs
+//! which plugins' code the lane is in, with the lane's Java stack (see
+//! `org.patchbukkit.events.LaneStallReporter`). Each stalled command is reported once.
+//!
+//! The threshold is read from `PATCHBUKKIT_STALL_THRESHOLD_MS` and defaults to five seconds.
+//! With `PATCHBUKKIT_STALL_DEFAULT_RESPONSE=1`, event handlers also stop waiting for a lane
+//! after the threshold and let Pumpkin go on with the event as if no listener changed it.
+
+use std::{
+    sync::{LazyLock, Mutex, Weak},
+    thread,
+    time::{Duration, Instant},
+};
+
+use j4rs::{InvocationArg, Jvm};
+
+use crate::java::jvm::commands::PriorityClass;
+
+pub const STALL_THRESHOLD_VARIABLE: &str = "PATCHBUKKIT_STALL_THRESHOLD_MS";
+pub const STALL_DEFAULT_RESPONSE_VARIABLE: &str = "PATCHBUKKIT_STALL_DEFAULT_RESPONSE";
+
+const DEFAULT_STALL_THRESHOLD: Duration = Duration::from_secs(5);
+
+/// Checks per threshold, so a stall is reported at most a quarter threshold late
+const CHECKS_PER_THRESHOLD: u32 = 4;
+
+struct StallSettings {
+    threshold: Duration,
+    default_response: bool,
+}
+
+static SETTINGS: LazyLock<StallSettings> = LazyLock::new(|| {
+    let threshold = std::env::var(STALL_THRESHOLD_VARIABLE)
+        .ok()
+        .and_then(|value| match value.parse::<u64>() {
+            Ok(millis) if millis > 0 => Some(Duration::from_millis(millis)),
+            _ => {
+                log::warn!(
+                    "Ignoring {STALL_THRESHOLD_VARIABLE}={value}, expected a positive number of milliseconds"
+                );
+                None
+            }
+        })
+        .unwrap_or(DEFAULT_STALL_THRESHOLD);
+
+    let default_response = std::env::var(STALL_DEFAULT_RESPONSE_VARIABLE)
+        .is_ok_and(|value| value == "1" || value.eq_ignore_ascii_case("true"));
+
+    StallSettings {
+        threshold,
+        default_response,
+    }
+});
+
+/// How long a caller waits for a blocking event before going on without the JVM, if it
+/// should give up at all.
+#[must_use]
+pub fn default_response_after() -> Option<Duration> {
+    SETTINGS.default_response.then_some(SETTINGS.threshold)
+}
+
+/// What a lane is running, shared with the watchdog.
+#[derive(Default)]
+pub struct LaneActivity {
+    current: Mutex<Option<RunningCommand>>,
+}
+
+#[derive(Clone, Copy, PartialEq, Eq)]
+struct RunningCommand {
+    started: Instant,
+    class: PriorityClass,
+}
+
+impl LaneActivity {
+    pub fn begin(&self, class: PriorityClass) {
+        *self.current.lock().unwrap() = Some(RunningCommand {
+            started: Instant::now(),
+            class,
+        });
+    }
+
+    pub fn end(&self) {
+        *self.current.lock().unwrap() = None;
+    }
+
+    fn running(&self) -> Option<RunningCommand> {
+        *self.current.lock().unwrap()
+    }
+}
+
+/// Starts watching the lanes. The watchdog stops once every lane has exited and dropped
+/// its activity.
+pub fn spawn(activities: Weak<[LaneActivity]>) {
+    thread::Builder::new()
+        .name("patchbukkit-jvm-watchdog".to_string())
+        .spawn(move || watch(&activities))
+        .expect("Failed to spawn JVM watchdog thread");
+}
+
+fn watch(activities: &Weak<[LaneActivity]>) {
+    let threshold = SETTINGS.threshold;
+    let mut reported: Vec<Option<RunningCommand>> = Vec::new();
+    let mut attached: Option<Jvm> = None;
+
+    loop {
+        thread::sleep(threshold / CHECKS_PER_THRESHOLD);
+        let Some(activities) = activities.upgrade() else {
+            break;
+        };
+        reported.resize(activities.len(), None);
+
+        for (lane, activity) in activities.iter().enumerate() {
+            let Some(running) = activity.running() else {
+                continue;
+            };
+            let elapsed = running.started.elapsed();
+            if elapsed < threshold || reported[lane] == Some(running) {
+                continue;
+            }
+            reported[lane] = Some(running);
+
+            let stack = describe_lane(&mut attached, lane)
+                .unwrap_or_else(|e| format!("its stack could not be captured: {e}"));
+            log::warn!(
+                "JVM lane {lane} has been running a {:?} command for {elapsed:?}, {stack}",
+                running.class
+            );
+            if SETTINGS.default_response {
+                log::warn!("Blocking events sent to JVM lane {lane} go on without it while it is stuck");
+            }
+        }
+    }
+}
+
+fn describe_lane(attached: &mut Option<Jvm>, lane: usize) -> anyhow::Result<String> {
+    let jvm = match attached {
+        Some(jvm) => jvm,
+        None => attached.insert(Jvm::attach_thread()?),
+    };
+
+    let description = jvm.invoke_static(
+        "org.patchbukkit.events.LaneStallReporter",
+        "describe",
+        &[InvocationArg::try_from(lane as i32)?.into_primitive()?],
+    )?;
+    Ok(jvm.to_rust(description)?)
+}
+
+/// Tells Java which thread runs the lane, so the watchdog can capture its stack.
+pub fn register_lane_thread(jvm: &Jvm, lane: usize) -> anyhow::Result<()> {
+    jvm.invoke_static(
+        "org.patchbukkit.events.LaneStallReporter",
+        "registerLaneThread",
+        &[InvocationArg::try_from(lane as i32)?.into_primitive()?],
+    )?;
+    Ok(())
+}
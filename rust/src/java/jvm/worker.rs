@@ -1,26 +1,33 @@
-use std::{path::PathBuf, sync::Arc};
+use std::{path::PathBuf, sync::Arc, time::Instant};
 
 use j4rs::{InvocationArg, Jvm, JvmBuilder};
 use pumpkin::plugin::Context;
 use tokio::sync::mpsc;
 
 use crate::{
+    events::interest::initialize_interest_table,
     java::{
         jar::read_configs_from_jar,
-        jvm::commands::{JvmCommand, LoadPluginResult},
+        jvm::{
+            commands::{JvmCommand, LoadPluginResult},
+            lanes::JvmLanes,
+            metrics,
+        },
         native_callbacks::{init_callback_context, initialize_callbacks},
         plugin::{
             command_manager::CommandManager, event_manager::EventManager, manager::PluginManager,
         },
     },
-    proto::patchbukkit::events::FireEventResponse,
 };
 
 pub struct JvmWorker {
     command_rx: mpsc::Receiver<JvmCommand>,
     pub plugin_manager: PluginManager,
-    pub event_manager: EventManager,
     pub command_manager: CommandManager,
+    /// Where plugin code runs, everything but loading, enabling and disabling plugins
+    pub lanes: JvmLanes,
+    /// Shared with the lanes, the worker only records plugin lanes in its capture
+    event_manager: EventManager,
     jvm: Option<j4rs::Jvm>,
     context: Option<Arc<Context>>,
 }
@@ -28,11 +35,13 @@ pub struct JvmWorker {
 impl JvmWorker {
     #[must_use]
     pub fn new(command_rx: mpsc::Receiver<JvmCommand>) -> Self {
+        let event_manager = EventManager::new();
         Self {
             command_rx,
             plugin_manager: PluginManager::new(),
-            event_manager: EventManager::new(),
             command_manager: CommandManager::new(),
+            lanes: JvmLanes::spawn(&event_manager),
+            event_manager,
             jvm: None,
             context: None,
         }
@@ -42,17 +51,19 @@ impl JvmWorker {
         log::info!("JVM worker thread started");
 
         while let Some(command) = self.command_rx.recv().await {
+            let kind = command.kind();
+            let started = Instant::now();
+
             match command {
                 JvmCommand::Initialize {
                     j4rs_path,
                     respond_to,
                     context,
-                    command_tx,
                 } => {
                     init_callback_context(
                         context.clone(),
                         tokio::runtime::Handle::current(),
-                        command_tx.clone(),
+                        self.lanes.clone(),
                     )
                     .unwrap();
                     self.context = Some(context);
@@ -97,11 +108,7 @@ impl JvmWorker {
                         }
                     };
                 }
-                JvmCommand::InstantiateAllPlugins {
-                    respond_to,
-                    server,
-                    command_tx,
-                } => {
+                JvmCommand::InstantiateAllPlugins { respond_to, server } => {
                     let jvm = match self.jvm {
                         Some(ref jvm) => jvm,
                         None => &Jvm::attach_thread().unwrap(),
@@ -112,7 +119,8 @@ impl JvmWorker {
                             .instantiate_all_plugins(
                                 jvm,
                                 &server,
-                                command_tx,
+                                &self.lanes,
+                                &self.event_manager,
                                 &mut self.command_manager,
                             )
                             .await,
@@ -135,70 +143,19 @@ impl JvmWorker {
                     let _ = respond_to.send(self.plugin_manager.disable_all_plugins(jvm));
                 }
                 JvmCommand::Shutdown { respond_to } => {
+                    self.lanes.shutdown().await;
                     let _ = respond_to.send(self.plugin_manager.unload_all_plugins());
                     break;
                 }
-                JvmCommand::FireEvent {
-                    respond_to,
-                    plugin,
-                    payload,
-                } => {
-                    let jvm = match self.jvm {
-                        Some(ref jvm) => jvm,
-                        None => &Jvm::attach_thread().unwrap(),
-                    };
-
-                    let original_event = payload.event.clone();
-                    let cancelled = match self.event_manager.fire_event(jvm, payload, plugin) {
-                        Ok(c) => c,
-                        Err(e) => {
-                            log::error!("Failed to fire event: {e}");
-                            FireEventResponse {
-                                cancelled: false,
-                                data: Some(original_event),
-                            }
-                        }
-                    };
-
-                    let _ = respond_to.send(cancelled);
-                }
-                JvmCommand::TriggerCommand {
-                    full_command,
-                    command_sender,
-                    respond_to,
-                } => {
-                    let jvm = match self.jvm {
-                        Some(ref jvm) => jvm,
-                        None => &Jvm::attach_thread().unwrap(),
-                    };
-
-                    let result =
-                        self.command_manager
-                            .trigger_command(jvm, full_command, command_sender);
-
-                    let _ = respond_to.send(result);
-                }
-                JvmCommand::GetCommandTabComplete {
-                    command_sender,
-                    full_command,
-                    respond_to,
-                    location,
-                } => {
-                    let jvm = match self.jvm {
-                        Some(ref jvm) => jvm,
-                        None => &Jvm::attach_thread().unwrap(),
-                    };
-
-                    let result = self.command_manager.get_tab_complete(
-                        jvm,
-                        command_sender,
-                        full_command,
-                        location,
-                    );
-
-                    let _ = respond_to.send(result);
+                JvmCommand::FireEvent { .. }
+                | JvmCommand::ObserveEvent { .. }
+                | JvmCommand::TriggerCommand { .. }
+                | JvmCommand::GetCommandTabComplete { .. } => {
+                    log::error!("JVM worker received a command only JVM lanes run");
                 }
             }
+
+            metrics::ran(kind, started.elapsed());
         }
 
         log::info!("JVM worker thread exited");
@@ -210,6 +167,7 @@ impl JvmWorker {
         let jvm = JvmBuilder::new().with_base_path(j4rs_path).build()?;
 
         initialize_callbacks(&jvm)?;
+        initialize_interest_table(&jvm)?;
 
         setup_patchbukkit_server(&jvm)?;
 
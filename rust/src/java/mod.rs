@@ -3,3 +3,4 @@ pub mod jvm;
 pub mod native_callbacks;
 pub mod plugin;
 pub mod resources;
+pub mod submission_ring;
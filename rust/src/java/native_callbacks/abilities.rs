@@ -6,7 +6,7 @@ use crate::proto::patchbukkit::{
 
 pub fn ffi_native_bridge_get_abilities_impl(request: Uuid) -> Option<Abilities> {
     let ctx = CALLBACK_CONTEXT.get()?;
-    let player_uuid = uuid::Uuid::parse_str(&request.value).ok()?;
+    let player_uuid = uuid::Uuid::from(request);
     let player = ctx.plugin_context.server.get_player_by_uuid(player_uuid)?;
     let abilities = tokio::task::block_in_place(|| {
         ctx.runtime
@@ -26,7 +26,7 @@ pub fn ffi_native_bridge_get_abilities_impl(request: Uuid) -> Option<Abilities>
 
 pub fn ffi_native_bridge_set_abilities_impl(request: SetAbilitiesRequest) -> Option<bool> {
     let ctx = CALLBACK_CONTEXT.get()?;
-    let player_uuid = uuid::Uuid::parse_str(&request.uuid?.value).ok()?;
+    let player_uuid = uuid::Uuid::from(request.uuid?);
     let abilities = request.abilities?;
     let player = ctx.plugin_context.server.get_player_by_uuid(player_uuid)?;
 
@@ -1,35 +1,64 @@
-use std::sync::Arc;
+use std::collections::HashSet;
+use std::sync::{Arc, LazyLock, Mutex};
 
 use pumpkin::plugin::EventPriority;
 use pumpkin::plugin::player::player_join::PlayerJoinEvent;
 use pumpkin_util::text::TextComponent;
 
 use crate::events::handler::PatchBukkitEventHandler;
+use crate::events::interest;
+use crate::java::jvm::lanes::MAX_LANES;
 use crate::java::native_callbacks::CALLBACK_CONTEXT;
 use crate::proto::patchbukkit::events::event::Data;
 use crate::proto::patchbukkit::events::{
     CallEventRequest, CallEventResponse, RegisterEventRequest,
 };
 
+/// Event types, priority bands and JVM lanes that already have a Pumpkin handler. A handler
+/// runs the listeners in its band of every plugin on its lane, so each is registered once.
+static REGISTERED_BANDS: LazyLock<Mutex<HashSet<(String, i32, usize)>>> =
+    LazyLock::new(|| Mutex::new(HashSet::new()));
+
 pub fn ffi_native_bridge_register_event_impl(request: RegisterEventRequest) -> Option<()> {
     let ctx = CALLBACK_CONTEXT.get()?;
-    let pumpkin_priority = match request.priority {
+    let Some(interest_slot) = interest::slot(&request.event_type) else {
+        log::warn!(
+            "Unsupported Bukkit event type '{}' from plugin '{}'",
+            request.event_type,
+            request.plugin_name
+        );
+        return Some(());
+    };
+
+    let priority_band = request.priority.clamp(0, 5);
+    let lane = request.lane.clamp(0, MAX_LANES as i32 - 1) as usize;
+    if !REGISTERED_BANDS
+        .lock()
+        .unwrap()
+        .insert((request.event_type.clone(), priority_band, lane))
+    {
+        return Some(());
+    }
+
+    let pumpkin_priority = match priority_band {
         0 => EventPriority::Lowest,
         1 => EventPriority::Low,
         2 => EventPriority::Normal,
         3 => EventPriority::High,
+        // HIGHEST, and MONITOR which Java registers as non-blocking
         _ => EventPriority::Highest,
     };
 
     log::info!(
-        "Plugin '{}' registering listener for '{}' (priority={:?}, blocking={})",
+        "Plugin '{}' registering listener for '{}' (priority={:?}, blocking={}, lane={})",
         request.plugin_name,
         request.event_type,
         request.priority,
-        request.blocking
+        request.blocking,
+        lane
     );
 
-    let command_tx = ctx.command_tx.clone();
+    let command_tx = ctx.lanes.sender(lane).clone();
     let context = ctx.plugin_context.clone();
 
     tokio::task::block_in_place(|| {
@@ -42,7 +71,9 @@ pub fn ffi_native_bridge_register_event_impl(request: RegisterEventRequest) -> O
                             PatchBukkitEventHandler<pumpkin::plugin::player::player_join::PlayerJoinEvent>,
                         >(
                             Arc::new(PatchBukkitEventHandler::new(
-                                request.plugin_name.clone(),
+                                interest_slot,
+                                lane,
+                                priority_band,
                                 command_tx.clone(),
                             )),
                             pumpkin_priority,
@@ -51,6 +82,10 @@ pub fn ffi_native_bridge_register_event_impl(request: RegisterEventRequest) -> O
                         .await;
                 }
                 _ => {
+                    REGISTERED_BANDS
+                        .lock()
+                        .unwrap()
+                        .remove(&(request.event_type.clone(), priority_band, lane));
                     log::warn!(
                         "Unsupported Bukkit event type '{}' from plugin '{}'",
                         request.event_type, request.plugin_name
@@ -74,12 +109,13 @@ pub fn ffi_native_bridge_call_event_impl(request: CallEventRequest) -> Option<Ca
         ctx.runtime.block_on(async {
             match event.data? {
                 Data::PlayerJoin(player_join_event_data) => {
-                    let uuid =
-                        uuid::Uuid::parse_str(&player_join_event_data.player_uuid?.value).ok()?;
+                    let uuid = uuid::Uuid::from(player_join_event_data.player_uuid?);
                     let player = context.server.get_player_by_uuid(uuid)?;
                     let pumpkin_event = PlayerJoinEvent::new(
                         player,
-                        TextComponent::from_legacy_string(&player_join_event_data.join_message),
+                        TextComponent::from_legacy_string(
+                            player_join_event_data.join_message.as_deref().unwrap_or_default(),
+                        ),
                     );
                     context.server.plugin_manager.fire(pumpkin_event).await;
                     Some(true)
@@ -5,16 +5,9 @@ use crate::{
     proto::patchbukkit::common::{Location, Uuid, Vec3, World},
 };
 
-#[repr(C)]
-pub struct Vec3FFI {
-    pub x: f64,
-    pub y: f64,
-    pub z: f64,
-}
-
 pub fn ffi_native_bridge_get_location_impl(entity_uuid: Uuid) -> Option<Location> {
     let ctx = CALLBACK_CONTEXT.get()?;
-    let uuid = uuid::Uuid::parse_str(&entity_uuid.value).ok()?;
+    let uuid = uuid::Uuid::from(entity_uuid);
 
     let entity = ctx
         .plugin_context
@@ -30,9 +23,7 @@ pub fn ffi_native_bridge_get_location_impl(entity_uuid: Uuid) -> Option<Location
 
         return Some(Location {
             world: Some(World {
-                uuid: Some(Uuid {
-                    value: world.to_string(),
-                }),
+                uuid: Some(world.into()),
             }),
             position: Some(Vec3 {
                 x: position.x,
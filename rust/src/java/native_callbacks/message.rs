@@ -6,7 +6,7 @@ use crate::{
 
 pub fn ffi_native_bridge_send_message_impl(request: SendMessageRequest) -> Option<()> {
     let ctx = CALLBACK_CONTEXT.get()?;
-    let player_uuid = uuid::Uuid::parse_str(&request.uuid?.value).unwrap();
+    let player_uuid = uuid::Uuid::from(request.uuid?);
 
     ctx.runtime.spawn(async move {
         let player = ctx.plugin_context.server.get_player_by_uuid(player_uuid);
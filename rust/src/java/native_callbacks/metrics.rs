@@ -0,0 +1,31 @@
+use crate::{
+    java::jvm::metrics::{self, HistogramSnapshot},
+    proto::patchbukkit::metrics::{CommandMetrics, GetJvmMetricsRequest, Histogram, JvmMetrics},
+};
+
+pub fn ffi_native_bridge_get_jvm_metrics_impl(
+    _request: GetJvmMetricsRequest,
+) -> Option<JvmMetrics> {
+    let commands = metrics::snapshot()
+        .into_iter()
+        .map(|command| CommandMetrics {
+            command: format!("{:?}", command.kind),
+            queue_wait_micros: Some(histogram(&command.queue_wait_micros)),
+            service_micros: Some(histogram(&command.service_micros)),
+            queue_depth: Some(histogram(&command.queue_depth)),
+            queued: command.queued,
+            dropped: command.dropped,
+        })
+        .collect();
+
+    Some(JvmMetrics { commands })
+}
+
+fn histogram(snapshot: &HistogramSnapshot) -> Histogram {
+    Histogram {
+        buckets: snapshot.buckets.to_vec(),
+        count: snapshot.count(),
+        sum: snapshot.sum,
+        max: snapshot.max,
+    }
+}
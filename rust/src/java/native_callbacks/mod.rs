@@ -3,9 +3,7 @@ use std::sync::{Arc, OnceLock};
 use anyhow::Result;
 use j4rs::Jvm;
 use pumpkin::plugin::Context;
-use tokio::sync::mpsc;
-
-use crate::{java::jvm::commands::JvmCommand, proto::initialize_ffi_callbacks};
+use crate::{java::jvm::lanes::JvmLanes, proto::initialize_ffi_callbacks};
 
 mod abilities;
 pub use abilities::*;
@@ -19,6 +17,9 @@ pub use location::*;
 pub mod message;
 pub use message::*;
 
+pub mod metrics;
+pub use metrics::*;
+
 pub mod registry;
 pub use registry::*;
 
@@ -32,18 +33,18 @@ static CALLBACK_CONTEXT: OnceLock<CallbackContext> = OnceLock::new();
 struct CallbackContext {
     pub plugin_context: Arc<Context>,
     pub runtime: tokio::runtime::Handle,
-    pub command_tx: mpsc::Sender<JvmCommand>,
+    pub lanes: JvmLanes,
 }
 
 pub fn init_callback_context(
     plugin_context: Arc<Context>,
     runtime: tokio::runtime::Handle,
-    command_tx: mpsc::Sender<JvmCommand>,
+    lanes: JvmLanes,
 ) -> Result<()> {
     let context = CallbackContext {
         plugin_context,
         runtime,
-        command_tx,
+        lanes,
     };
 
     CALLBACK_CONTEXT
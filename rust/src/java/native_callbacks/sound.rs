@@ -14,8 +14,8 @@ pub fn ffi_native_bridge_player_entity_play_sound_impl(
 ) -> Option<()> {
     log::error!("PlayerEntityPlaySoundRequest sent");
     let ctx = CALLBACK_CONTEXT.get()?;
-    let player_uuid = uuid::Uuid::parse_str(&request.player_uuid?.value).ok()?;
-    let entity_uuid = uuid::Uuid::parse_str(&request.entity_uuid?.value).ok()?;
+    let player_uuid = uuid::Uuid::from(request.player_uuid?);
+    let entity_uuid = uuid::Uuid::from(request.entity_uuid?);
 
     let player = ctx.plugin_context.server.get_player_by_uuid(player_uuid)?;
 
@@ -57,7 +57,7 @@ pub fn ffi_native_bridge_player_entity_play_sound_impl(
 
 pub fn ffi_native_bridge_player_play_sound_impl(request: PlayerPlaySoundRequest) -> Option<()> {
     let ctx = CALLBACK_CONTEXT.get()?;
-    let player_uuid = uuid::Uuid::parse_str(&request.player_uuid?.value).ok()?;
+    let player_uuid = uuid::Uuid::from(request.player_uuid?);
     let player = ctx.plugin_context.server.get_player_by_uuid(player_uuid)?;
 
     let sound = request.sound?;
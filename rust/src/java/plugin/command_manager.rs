@@ -5,13 +5,12 @@ use j4rs::{Instance, InvocationArg, Jvm};
 use pumpkin::{command::dispatcher::CommandError, plugin::Context};
 use pumpkin_protocol::java::client::play::CommandSuggestion;
 use pumpkin_util::permission::{Permission, PermissionDefault};
-use tokio::sync::mpsc;
 
 use crate::{
     commands::{SimpleCommandSender, init_java_command},
     config,
     java::{
-        jvm::commands::{JvmCommand, Location},
+        jvm::{commands::Location, lanes::LaneSender},
         plugin::manager::Plugin,
     },
 };
@@ -147,7 +146,7 @@ impl CommandManager {
         plugin: &Plugin,
         cmd_name: String,
         cmd_data: &config::spigot::Command,
-        command_tx: mpsc::Sender<JvmCommand>,
+        command_tx: LaneSender,
     ) -> Result<()> {
         let command_map = match self.command_map {
             Some(ref command_map) => command_map,
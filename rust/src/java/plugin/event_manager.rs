@@ -1,16 +1,28 @@
-use std::sync::Arc;
+use std::{
+    collections::HashMap,
+    sync::{Arc, Mutex, Weak},
+};
 
 use anyhow::Result;
 use j4rs::{Instance, InvocationArg, Jvm};
-use prost::Message;
 use pumpkin::{entity::player::Player, server::Server};
 
 use crate::{
-    events::handler::JvmEventPayload,
-    proto::patchbukkit::events::{FireEventResponse, event::Data},
+    events::{capture::EventCapture, handler::JvmEventPayload},
+    proto::patchbukkit::{
+        bridge::upcall_java_bridge_fire_event,
+        events::{FireEventRequest, FireEventResponse, event::Data},
+    },
 };
 
-pub struct EventManager {}
+/// Shared by every JVM lane, clones write to the same capture.
+#[derive(Clone)]
+pub struct EventManager {
+    capture: Option<Arc<Mutex<EventCapture>>>,
+    /// The Pumpkin player every Java player was registered for. A join fires once per
+    /// priority band and lane, but registers its player only once.
+    registered_players: Arc<Mutex<HashMap<uuid::Uuid, Weak<Player>>>>,
+}
 
 impl Default for EventManager {
     fn default() -> Self {
@@ -20,78 +32,79 @@ impl Default for EventManager {
 
 impl EventManager {
     #[must_use]
-    pub const fn new() -> Self {
-        Self {}
+    pub fn new() -> Self {
+        Self {
+            capture: EventCapture::from_env().map(|capture| Arc::new(Mutex::new(capture))),
+            registered_players: Arc::default(),
+        }
     }
 
+    /// Records the lane of a plugin in the event capture, if there is one.
+    pub fn capture_lane(&self, plugin: &str, lane: usize) {
+        if let Some(capture) = &self.capture {
+            capture.lock().unwrap().record_lane(plugin, lane);
+        }
+    }
+
+    /// Fires an event for the listeners in one priority band of every plugin on a JVM lane
+    /// through the `JavaBridge.FireEvent` upcall. Only player joins still go through j4rs, to
+    /// register the player before the first of its handlers run.
     pub fn fire_event(
         &self,
         jvm: &Jvm,
         payload: JvmEventPayload,
-        plugin_name: String,
+        lane: usize,
+        priority_band: i32,
+        cancelled: bool,
     ) -> Result<FireEventResponse> {
-        let server = jvm.invoke_static("org.bukkit.Bukkit", "getServer", InvocationArg::empty())?;
-        let patch_server = jvm.cast(&server, "org.patchbukkit.PatchBukkitServer")?;
-        let event_manager = jvm.invoke(&patch_server, "getEventManager", InvocationArg::empty())?;
-
         if let Some(ref event) = payload.event.data
             && matches!(event, Data::PlayerJoin(_))
             && let Some(ref player) = payload.context.player
         {
-            Self::register_player(jvm, &patch_server, player, &payload.context.server)?;
+            self.register_player_once(jvm, player, &payload.context.server)?;
         }
 
-        let bytes = payload.event.encode_to_vec();
-        let j_bytes = jvm.create_java_array(
-            "byte",
-            &bytes
-                .iter()
-                .map(|&b| {
-                    InvocationArg::try_from(b as i8)
-                        .unwrap()
-                        .into_primitive()
-                        .unwrap()
-                })
-                .collect::<Vec<_>>(),
-        )?;
-
-        let j_event = jvm.invoke_static(
-            "org.patchbukkit.events.PatchBukkitEventFactory",
-            "createEventFromBytes",
-            &[InvocationArg::from(j_bytes)],
-        )?;
-
-        let is_null: bool = jvm.to_rust(jvm.invoke_static(
-            "java.util.Objects",
-            "isNull",
-            &[InvocationArg::from(jvm.clone_instance(&j_event)?)],
-        )?)?;
+        let request = FireEventRequest {
+            event: Some(payload.event),
+            priority: priority_band,
+            cancelled,
+            lane: lane as i32,
+        };
 
-        if is_null {
-            return Err(anyhow::anyhow!(
-                "Failed to create event - factory returned null"
-            ));
+        if let Some(capture) = &self.capture {
+            capture.lock().unwrap().record(&request);
         }
 
-        jvm.invoke(
-            &event_manager,
-            "fireEvent",
-            &[
-                InvocationArg::from(jvm.clone_instance(&j_event)?),
-                InvocationArg::try_from(plugin_name)?,
-            ],
-        )?;
+        upcall_java_bridge_fire_event(&request)
+            .ok_or_else(|| anyhow::anyhow!("Failed to fire event - Java returned no response"))
+    }
 
-        let response_bytes: Vec<i8> = jvm.to_rust(jvm.invoke_static(
-            "org.patchbukkit.events.PatchBukkitEventFactory",
-            "toFireEventResponse",
-            &[InvocationArg::from(j_event)],
-        )?)?;
+    /// Registers the player of a join with Java, unless an earlier band of the same join did.
+    /// A player who joins again is a new Pumpkin player and is registered again.
+    fn register_player_once(
+        &self,
+        jvm: &Jvm,
+        player: &Arc<Player>,
+        server: &Arc<Server>,
+    ) -> Result<()> {
+        // Held while registering, so bands of the join on other lanes wait for the player
+        let mut registered = self.registered_players.lock().unwrap();
+        let uuid = player.gameprofile.id;
+        if registered
+            .get(&uuid)
+            .is_some_and(|registered| registered.ptr_eq(&Arc::downgrade(player)))
+        {
+            return Ok(());
+        }
 
-        let response_bytes: Vec<u8> = response_bytes.iter().map(|&b| b as u8).collect();
-        let response = FireEventResponse::decode(response_bytes.as_slice())?;
+        let server_instance =
+            jvm.invoke_static("org.bukkit.Bukkit", "getServer", InvocationArg::empty())?;
+        let patch_server = jvm.cast(&server_instance, "org.patchbukkit.PatchBukkitServer")?;
+        Self::register_player(jvm, &patch_server, player, server)?;
 
-        Ok(response)
+        registered.retain(|_, player| player.strong_count() > 0);
+        registered.insert(uuid, Arc::downgrade(player));
+        Ok(())
     }
 
     pub fn register_player(
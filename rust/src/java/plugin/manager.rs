@@ -7,14 +7,15 @@ use std::{
 use anyhow::Result;
 use j4rs::{Instance, InvocationArg, Jvm};
 use pumpkin::plugin::Context;
-use tokio::sync::mpsc;
-
 use crate::{
     config::{
         paper::PaperPluginYml,
         spigot::{Command, SpigotPluginYml},
     },
-    java::{jvm::commands::JvmCommand, plugin::command_manager::CommandManager},
+    java::{
+        jvm::lanes::JvmLanes,
+        plugin::{command_manager::CommandManager, event_manager::EventManager},
+    },
 };
 
 #[derive(Debug, Clone, Copy, PartialEq, Eq)]
@@ -65,6 +66,8 @@ pub struct Plugin {
     /// Data folder for this plugin
     pub data_folder: PathBuf,
     pub instance: Option<Instance>,
+    /// JVM lane the plugin's code runs on, assigned when it is instantiated
+    pub lane: usize,
     // The registered commands
     pub commands: HashMap<String, Command>,
 
@@ -235,6 +238,7 @@ impl PluginManager {
             data_folder: jar_path.as_ref().parent().unwrap().join("data"),
             path: jar_path.as_ref().to_path_buf(),
             instance: None,
+            lane: 0,
             commands,
             listeners: HashMap::new(),
 
@@ -283,6 +287,7 @@ impl PluginManager {
             data_folder: jar_path.as_ref().parent().unwrap().join("data"),
             path: jar_path.as_ref().to_path_buf(),
             instance: None,
+            lane: 0,
             commands,
             listeners: HashMap::new(),
 
@@ -378,12 +383,13 @@ impl PluginManager {
         &mut self,
         jvm: &Jvm,
         server: &Arc<Context>,
-        command_tx: mpsc::Sender<JvmCommand>,
+        lanes: &JvmLanes,
+        event_manager: &EventManager,
         command_manager: &mut CommandManager,
     ) -> Result<()> {
         let load_order = self.compute_load_order();
 
-        for plugin_key in load_order {
+        for (index, plugin_key) in load_order.into_iter().enumerate() {
             let (classpath, libraries) = match self.plugins.get(&plugin_key) {
                 Some(plugin) => (
                     self.classpath_string_for(plugin),
@@ -408,6 +414,19 @@ impl PluginManager {
             )?;
 
             plugin.instance = Some(plugin_instance);
+
+            // Round robin in load order, so plugins loaded together rarely share a lane
+            plugin.lane = index % lanes.count();
+            jvm.invoke_static(
+                "org.patchbukkit.events.PluginLanes",
+                "assign",
+                &[
+                    InvocationArg::try_from(&plugin.name)?,
+                    InvocationArg::try_from(plugin.lane as i32)?.into_primitive()?,
+                ],
+            )?;
+            event_manager.capture_lane(&plugin.name, plugin.lane);
+
             for (cmd_name, cmd_data) in &plugin.commands {
                 match command_manager
                     .register_command(
@@ -416,7 +435,7 @@ impl PluginManager {
                         plugin,
                         cmd_name.clone(),
                         cmd_data,
-                        command_tx.clone(),
+                        lanes.sender(plugin.lane).clone(),
                     )
                     .await
                 {
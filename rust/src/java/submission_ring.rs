@@ -0,0 +1,152 @@
+//! Shared-memory ring for fire-and-forget bridge calls.
+//!
+//! Java threads append encoded requests without crossing into native code, and a single drain
+//! thread here applies them once per tick, or as soon as Java rings the doorbell because the
+//! ring is filling up.
+//!
+//! Layout of the shared memory:
+//!
+//! - `0`: head, the byte position up to which records were consumed (written by Rust only)
+//! - `64`: tail, the byte position up to which space was reserved (CAS'd by Java producers)
+//! - `128..`: `capacity` bytes of records, addressed by position modulo `capacity`
+//!
+//! Each record starts on an 8 byte boundary with an `i32` length (header included) followed
+//! by an `i32` method id and the protobuf payload. The length is stored last with release
+//! semantics, so a record is published once its length is non-zero. Records never wrap; a
+//! record with method id `-1` skips the given number of bytes instead. Consumed records are
+//! zeroed before the head moves past them, so producers always write into zeroed memory.
+
+use std::{
+    alloc::Layout,
+    sync::{
+        OnceLock,
+        atomic::{AtomicI32, AtomicU64, Ordering},
+    },
+    thread::Thread,
+    time::Duration,
+};
+
+const HEAD_OFFSET: usize = 0;
+const DATA_OFFSET: usize = 128;
+const RECORD_HEADER: usize = 8;
+const SKIP_RECORD: i32 = -1;
+
+/// Must be a power of two, positions are reduced with a mask on both sides.
+const CAPACITY: usize = 1 << 18;
+/// One server tick.
+const DRAIN_INTERVAL: Duration = Duration::from_millis(50);
+
+/// Applies one submitted request, generated per service as `ffi_<service>_dispatch_submission`.
+pub type Dispatch = fn(method_id: i32, payload: &[u8]);
+
+pub struct SubmissionRing {
+    memory: *mut u8,
+    dispatch: Dispatch,
+    drainer: OnceLock<Thread>,
+}
+
+// The memory is only accessed through atomics and by the single drain thread
+unsafe impl Send for SubmissionRing {}
+unsafe impl Sync for SubmissionRing {}
+
+impl SubmissionRing {
+    /// Allocates a ring and starts its drain thread. The ring is leaked on purpose: Java keeps
+    /// writing to it for as long as the JVM is alive.
+    pub fn start(dispatch: Dispatch) -> anyhow::Result<&'static Self> {
+        let layout = Layout::from_size_align(DATA_OFFSET + CAPACITY, 64)?;
+        let memory = unsafe { std::alloc::alloc_zeroed(layout) };
+        if memory.is_null() {
+            std::alloc::handle_alloc_error(layout);
+        }
+
+        let ring: &'static Self = Box::leak(Box::new(Self {
+            memory,
+            dispatch,
+            drainer: OnceLock::new(),
+        }));
+
+        let handle = std::thread::Builder::new()
+            .name("patchbukkit-submission-ring".to_string())
+            .spawn(move || ring.run())?;
+        let _ = ring.drainer.set(handle.thread().clone());
+
+        Ok(ring)
+    }
+
+    #[must_use]
+    pub fn memory(&self) -> *mut u8 {
+        self.memory
+    }
+
+    #[must_use]
+    pub fn capacity(&self) -> usize {
+        CAPACITY
+    }
+
+    fn run(&self) {
+        loop {
+            self.drain();
+            std::thread::park_timeout(DRAIN_INTERVAL);
+        }
+    }
+
+    fn control(&self, offset: usize) -> &AtomicU64 {
+        unsafe { &*(self.memory.add(offset) as *const AtomicU64) }
+    }
+
+    /// Applies every published record in order and returns how many requests were dispatched.
+    fn drain(&self) -> usize {
+        let head_cell = self.control(HEAD_OFFSET);
+        let mut head = head_cell.load(Ordering::Relaxed);
+        let mut drained = 0;
+
+        loop {
+            let position = (head as usize) & (CAPACITY - 1);
+            let record = unsafe { self.memory.add(DATA_OFFSET + position) };
+            let length = unsafe { &*(record as *const AtomicI32) }.load(Ordering::Acquire);
+            if length <= 0 {
+                break;
+            }
+
+            let length = length as usize;
+            let method_id = unsafe { (record.add(4) as *const i32).read() };
+            let span = if method_id == SKIP_RECORD {
+                length
+            } else {
+                let payload = unsafe {
+                    std::slice::from_raw_parts(record.add(RECORD_HEADER), length - RECORD_HEADER)
+                };
+                let dispatch = self.dispatch;
+                if std::panic::catch_unwind(|| dispatch(method_id, payload)).is_err() {
+                    log::error!("Submitted bridge call {method_id} panicked");
+                }
+                drained += 1;
+                (length + 7) & !7
+            };
+
+            unsafe { std::ptr::write_bytes(record, 0, span) };
+            head += span as u64;
+            head_cell.store(head, Ordering::Release);
+        }
+
+        drained
+    }
+
+    fn ring_doorbell(&self) {
+        if let Some(drainer) = self.drainer.get() {
+            drainer.unpark();
+        }
+    }
+}
+
+/// Wakes the drain thread early, called by Java when a ring is more than half full.
+///
+/// # Safety
+///
+/// - `ring` must be a pointer returned by `SubmissionRing::start`
+#[unsafe(no_mangle)]
+pub unsafe extern "C" fn ffi_submission_ring_doorbell(ring: *const SubmissionRing) {
+    if let Some(ring) = unsafe { ring.as_ref() } {
+        ring.ring_doorbell();
+    }
+}
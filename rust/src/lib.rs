@@ -112,7 +112,6 @@ async fn on_load_inner(plugin: &PatchBukkitPlugin, server: Arc<Context>) -> Resu
                 j4rs_path: dirs.j4rs,
                 respond_to: tx,
                 context: server.clone(),
-                command_tx: plugin.command_tx.clone(),
             })
             .await
             .map_err(|e| format!("Failed to send command to initialize J4RS: {e}"))?;
@@ -128,7 +127,6 @@ async fn on_load_inner(plugin: &PatchBukkitPlugin, server: Arc<Context>) -> Resu
             .send(JvmCommand::InstantiateAllPlugins {
                 respond_to: tx,
                 server: server.clone(),
-                command_tx: plugin.command_tx.clone(),
             })
             .await
             .map_err(|e| format!("Failed to send command to instantiate plugins: {e}"))?;
@@ -5,12 +5,32 @@ pub mod patchbukkit {
 
     pub mod common {
         include!(concat!(env!("OUT_DIR"), "/patchbukkit.common.rs"));
+
+        impl From<Uuid> for uuid::Uuid {
+            fn from(value: Uuid) -> Self {
+                Self::from_u64_pair(value.most_significant_bits, value.least_significant_bits)
+            }
+        }
+
+        impl From<uuid::Uuid> for Uuid {
+            fn from(value: uuid::Uuid) -> Self {
+                let (most_significant_bits, least_significant_bits) = value.as_u64_pair();
+                Self {
+                    most_significant_bits,
+                    least_significant_bits,
+                }
+            }
+        }
     }
 
     pub mod events {
         include!(concat!(env!("OUT_DIR"), "/patchbukkit.events.rs"));
     }
 
+    pub mod ffi {
+        include!(concat!(env!("OUT_DIR"), "/patchbukkit.ffi.rs"));
+    }
+
     pub mod abilities {
         include!(concat!(env!("OUT_DIR"), "/patchbukkit.abilities.rs"));
     }
@@ -19,6 +39,10 @@ pub mod patchbukkit {
         include!(concat!(env!("OUT_DIR"), "/patchbukkit.message.rs"));
     }
 
+    pub mod metrics {
+        include!(concat!(env!("OUT_DIR"), "/patchbukkit.metrics.rs"));
+    }
+
     pub mod registry {
         include!(concat!(env!("OUT_DIR"), "/patchbukkit.registry.rs"));
     }